@@ -25,7 +25,6 @@
 package com.fortify.integration.jenkins.configurable;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.function.Predicate;
@@ -34,18 +33,15 @@ import org.apache.commons.lang.builder.ToStringBuilder;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.StaplerRequest;
-import org.springframework.core.OrderComparator;
 
 import com.fortify.integration.jenkins.configurable.AbstractConfigurable.AbstractDescriptorConfigurable;
 
 import hudson.Extension;
-import hudson.ExtensionList;
 import hudson.model.Saveable;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Builder;
 import hudson.util.DescribableList;
-import jenkins.model.Jenkins;
 import jenkins.tasks.SimpleBuildStep;
 import net.sf.json.JSONObject;
 
@@ -123,6 +119,9 @@ public abstract class AbstractBuilder extends Builder implements SimpleBuildStep
 	 *
 	 */
 	public static abstract class AbstractDescriptorBuilder extends BuildStepDescriptor<Builder> {
+		private final transient ConfigurableDescriptorListCache<AbstractDescriptorConfigurable> dynamicJobConfigurationDescriptors = new ConfigurableDescriptorListCache<>();
+		private final transient ConfigurableDescriptorListCache<AbstractDescriptorConfigurable> staticJobConfigurationDescriptors = new ConfigurableDescriptorListCache<>();
+		
 		public final AbstractBuilder getInstanceOrDefault(AbstractBuilder instance) {
 			return instance!=null ? instance : createDefaultInstance();
 		}
@@ -144,29 +143,20 @@ public abstract class AbstractBuilder extends Builder implements SimpleBuildStep
 		}
 		
 		public final List<? extends AbstractDescriptorConfigurable> getAllDynamicJobConfigurationDescriptors() {
-			return getAllJobConfigurationDescriptors(getDynamicJobConfigurationDescriptorTypes(), includeDynamicConfigurationDescriptorsWithoutGlobalConfiguration());
+			return getAllJobConfigurationDescriptors(dynamicJobConfigurationDescriptors, getDynamicJobConfigurationDescriptorTypes(), includeDynamicConfigurationDescriptorsWithoutGlobalConfiguration());
 		}
 
 		public final List<? extends AbstractDescriptorConfigurable> getAllStaticJobConfigurationDescriptors() {
-			return getAllJobConfigurationDescriptors(getStaticJobConfigurationDescriptorTypes(), includeStaticConfigurationDescriptorsWithoutGlobalConfiguration());
+			return getAllJobConfigurationDescriptors(staticJobConfigurationDescriptors, getStaticJobConfigurationDescriptorTypes(), includeStaticConfigurationDescriptorsWithoutGlobalConfiguration());
 		}
 
-		private final <D extends AbstractDescriptorConfigurable> List<D> getAllJobConfigurationDescriptors(Collection<Class<D>> types, boolean includeDescriptorsWithoutGlobalConfiguration) {
-			List<D> result = new ArrayList<>();
-			for ( Class<D> type : types ) {
-				ExtensionList<D> list = Jenkins.getInstance().getExtensionList(type);
-				result.addAll(list);
-			}
-			if ( !includeDescriptorsWithoutGlobalConfiguration ) {
-				result.removeIf(new Predicate<AbstractDescriptorConfigurable>() {
-					@Override
-					public boolean test(AbstractDescriptorConfigurable d) {
-						return !d.isConfigurationAvailable();
-					}
-				});
-			}
-			result.sort(new OrderComparator());
-			return result;
+		private final <D extends AbstractDescriptorConfigurable> List<D> getAllJobConfigurationDescriptors(ConfigurableDescriptorListCache<AbstractDescriptorConfigurable> cache, Collection<Class<D>> types, boolean includeDescriptorsWithoutGlobalConfiguration) {
+			return cache.get(types, includeDescriptorsWithoutGlobalConfiguration ? null : new Predicate<AbstractDescriptorConfigurable>() {
+				@Override
+				public boolean test(AbstractDescriptorConfigurable d) {
+					return d.isConfigurationAvailable();
+				}
+			});
 		}
 		
 		private DescribableList<AbstractConfigurable, AbstractDescriptorConfigurable> addDefaultDynamicJobConfigurationsList(DescribableList<AbstractConfigurable, AbstractDescriptorConfigurable> list) {
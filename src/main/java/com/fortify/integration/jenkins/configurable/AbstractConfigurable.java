@@ -27,7 +27,6 @@ package com.fortify.integration.jenkins.configurable;
 import java.io.PrintStream;
 import java.io.Serializable;
 
-import org.springframework.beans.BeanUtils;
 import org.springframework.core.Ordered;
 
 import com.fortify.integration.jenkins.configurable.AbstractConfigurationForConfigurable.AbstractDescriptorConfigurationForConfigurable;
@@ -101,14 +100,15 @@ public abstract class AbstractConfigurable extends AbstractDescribable<AbstractC
 	
 	/**
 	 * By default, this method copies all bean properties from the given default 
-	 * configuration to the current instance. If needed, concrete implementations 
-	 * can override this method to initialize the current instance with global 
-	 * configuration properties in some different way.
+	 * configuration to the current instance, using a copy plan that is computed
+	 * only once for every combination of default configuration type and our own type. 
+	 * If needed, concrete implementations can override this method to initialize 
+	 * the current instance with global configuration properties in some different way.
 	 * 
 	 * @param defaultConfiguration Default configuration, never null
 	 */
 	protected void configureValuesFromDefaultConfiguration(Describable<?> defaultConfiguration) {
-		BeanUtils.copyProperties(defaultConfiguration, this);
+		ConfigurablePropertyAccessors.copyProperties(defaultConfiguration, this);
 	}
 	
 	/**
@@ -204,6 +204,9 @@ public abstract class AbstractConfigurable extends AbstractDescribable<AbstractC
 	 *
 	 */
 	public static abstract class AbstractDescriptorConfigurable extends AbstractDescriptor<AbstractConfigurable> implements Ordered {
+		/** Descriptor for our {@link AbstractConfigurationForConfigurable} counterpart, resolved on first use */
+		private transient volatile AbstractDescriptorConfigurationForConfigurable configurationForConfigurableDescriptor;
+		
 		/**
 		 * Get the configuration for our AbstractConfigurable from {@link AbstractGlobalConfiguration}.
 		 * @return The configuration for our {@link AbstractConfigurable} implementation
@@ -244,7 +247,14 @@ public abstract class AbstractConfigurable extends AbstractDescribable<AbstractC
 		 * @return The descriptor for our {@link AbstractConfigurationForConfigurable} counterpart
 		 */
 		protected final AbstractDescriptorConfigurationForConfigurable getConfigurationForConfigurableDescriptor() {
-			return (AbstractDescriptorConfigurationForConfigurable) Jenkins.getInstance().getDescriptorOrDie(getConfigurationForConfigurableType());
+			// This is called for every AbstractConfigurable instance being constructed, so we 
+			// resolve the counterpart class and its descriptor only once 
+			AbstractDescriptorConfigurationForConfigurable result = configurationForConfigurableDescriptor;
+			if ( result == null ) {
+				result = (AbstractDescriptorConfigurationForConfigurable) Jenkins.getInstance().getDescriptorOrDie(getConfigurationForConfigurableType());
+				configurationForConfigurableDescriptor = result;
+			}
+			return result;
 		}
 		
 		/**
@@ -137,14 +137,18 @@ public abstract class AbstractConfigurableWithErrorHandler extends AbstractConfi
 		}
 	}
 	
+	/**
+	 * Aggregates the build result for all operations performed during a build. 
+	 * Operations may be performed in parallel, so all methods are synchronized.
+	 */
 	public static final class ErrorData {
 		private Result finalBuildResult = Result.SUCCESS;
 
-		public Result getFinalBuildResult() {
+		public synchronized Result getFinalBuildResult() {
 			return finalBuildResult;
 		}
 
-		public void updateFinalBuildResult(String currentResult) {
+		public synchronized void updateFinalBuildResult(String currentResult) {
 			this.finalBuildResult = finalBuildResult.combine(Result.fromString(currentResult));
 		}
 		
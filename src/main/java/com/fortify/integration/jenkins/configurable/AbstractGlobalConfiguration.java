@@ -26,29 +26,17 @@ package com.fortify.integration.jenkins.configurable;
 
 import java.io.IOException;
 import java.io.PrintStream;
-import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-import org.apache.commons.lang.ObjectUtils;
-import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.StaplerRequest;
-import org.springframework.core.OrderComparator;
 
 import com.fortify.integration.jenkins.configurable.AbstractConfigurationForConfigurable.AbstractDescriptorConfigurationForConfigurable;
-import com.google.common.base.Function;
-import com.google.common.collect.Maps;
 
 import hudson.EnvVars;
-import hudson.ExtensionList;
 import hudson.model.Describable;
 import hudson.util.DescribableList;
-import hudson.util.ReflectionUtils;
 import jenkins.model.GlobalConfiguration;
-import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 
 /**
@@ -76,8 +64,11 @@ public abstract class AbstractGlobalConfiguration<T extends AbstractGlobalConfig
 	private volatile DescribableList<AbstractConfigurationForConfigurable,AbstractDescriptorConfigurationForConfigurable> dynamicGlobalConfigurationsList;
 	private volatile DescribableList<AbstractConfigurationForConfigurable,AbstractDescriptorConfigurationForConfigurable> staticGlobalConfigurationsList;
 	
-	private transient Map<Class<? extends Describable<?>>, AbstractConfigurationForConfigurable> targetTypeToDynamicGlobalConfigurationsMap;
-	private transient Map<Class<? extends Describable<?>>, AbstractConfigurationForConfigurable> targetTypeToStaticGlobalConfigurationsMap;
+	/** Most recently published configuration snapshot; replaced as a whole whenever the configuration is updated */
+	private transient volatile GlobalConfigurationSnapshot snapshot;
+	private transient long snapshotVersion;
+	private final transient ConfigurableDescriptorListCache<AbstractDescriptorConfigurationForConfigurable> dynamicGlobalConfigurationDescriptors = new ConfigurableDescriptorListCache<>();
+	private final transient ConfigurableDescriptorListCache<AbstractDescriptorConfigurationForConfigurable> staticGlobalConfigurationDescriptors = new ConfigurableDescriptorListCache<>();
 	
 	public final AbstractGlobalConfiguration<T> getInstanceOrDefault(AbstractGlobalConfiguration<T> instance) {
 		return instance!=null ? instance : createDefaultInstance();
@@ -107,21 +98,15 @@ public abstract class AbstractGlobalConfiguration<T extends AbstractGlobalConfig
 	}
 	
 	public final List<? extends AbstractDescriptorConfigurationForConfigurable> getAllDynamicGlobalConfigurationDescriptors() {
-		return getAllGlobalConfigurationDescriptors(getDynamicGlobalConfigurationDescriptorTypes());
+		return getAllGlobalConfigurationDescriptors(dynamicGlobalConfigurationDescriptors, getDynamicGlobalConfigurationDescriptorTypes());
 	}
 
 	public final List<? extends AbstractDescriptorConfigurationForConfigurable> getAllStaticGlobalConfigurationDescriptors() {
-		return getAllGlobalConfigurationDescriptors(getStaticGlobalConfigurationDescriptorTypes());
+		return getAllGlobalConfigurationDescriptors(staticGlobalConfigurationDescriptors, getStaticGlobalConfigurationDescriptorTypes());
 	}
 
-	private <D extends AbstractDescriptorConfigurationForConfigurable> List<D> getAllGlobalConfigurationDescriptors(Collection<Class<D>> types) {
-		List<D> result = new ArrayList<>();
-		for ( Class<D> type : types ) {
-			ExtensionList<D> list = Jenkins.getInstance().getExtensionList(type);
-			result.addAll(list);
-		}
-		result.sort(new OrderComparator());
-		return result;
+	private <D extends AbstractDescriptorConfigurationForConfigurable> List<D> getAllGlobalConfigurationDescriptors(ConfigurableDescriptorListCache<AbstractDescriptorConfigurationForConfigurable> cache, Collection<Class<D>> types) {
+		return cache.get(types, null);
 	}
 	
 	public String getDynamicGlobalConfigurationAddButtonDisplayName() {
@@ -132,113 +117,81 @@ public abstract class AbstractGlobalConfiguration<T extends AbstractGlobalConfig
 		return "Delete";
 	}
 	
+	/**
+	 * Get the {@link GlobalConfigurationSnapshot} to be used for global configuration lookups
+	 * on the current thread. This returns the snapshot pinned on the current thread (if any),
+	 * or otherwise the most recently published snapshot. Apart from building the initial
+	 * snapshot, this method doesn't require any locking.
+	 * @return {@link GlobalConfigurationSnapshot} instance, never null
+	 */
+	public final GlobalConfigurationSnapshot getSnapshot() {
+		GlobalConfigurationSnapshot result = GlobalConfigurationSnapshot.getPinned(this);
+		if ( result == null ) {
+			result = snapshot;
+			if ( result == null ) {
+				synchronized (this) {
+					result = snapshot;
+					if ( result == null ) {
+						result = publishSnapshot();
+					}
+				}
+			}
+		}
+		return result;
+	}
+	
 	public final boolean isStatic(Class<?> configurableDescribableType) {
-		return getTargetTypeToStaticGlobalConfigurationsMap().containsKey(configurableDescribableType);
+		return getSnapshot().isStatic(configurableDescribableType);
 	}
 	
 	public final boolean isDynamic(Class<?> configurableDescribableType) {
-		return getTargetTypeToDynamicGlobalConfigurationsMap().containsKey(configurableDescribableType);
+		return getSnapshot().isDynamic(configurableDescribableType);
 	}
 	
 	public final boolean isEnabledByDefault(Class<?> configurableDescribableType) {
-		AbstractConfigurationForConfigurable config = getGlobalConfiguration(configurableDescribableType);
-        if ( config==null ) { return false; }
-        return config.isEnabledByDefault();
+		return getSnapshot().isEnabledByDefault(configurableDescribableType);
     }
 	
 	public final boolean isGlobalConfigurationAvailable(Class<?> configurableDescribableType) {
-		return getTargetTypeToDynamicGlobalConfigurationsMap().containsKey(configurableDescribableType)
-				|| getTargetTypeToStaticGlobalConfigurationsMap().containsKey(configurableDescribableType);
+		return getSnapshot().isGlobalConfigurationAvailable(configurableDescribableType);
 	}
 
-	@SuppressWarnings("unchecked")
 	public final <D extends Describable<?>> D getConfiguration(Class<D> type) {
-		AbstractConfigurationForConfigurable config = getGlobalConfiguration(type);
-		return config == null ? null : (D)config.getTarget();
+		return getSnapshot().getConfiguration(type);
 	}
 	
 	public final boolean isOverrideAllowed(Class<?> configurableDescribableType, String propertyName) {
-		AbstractConfigurationForConfigurable config = getGlobalConfiguration(configurableDescribableType);
-		if ( config==null ) { return true; }
-		if ( config.isOverrideAllowed() ) { return true; }
-		return isGlobalConfigurationPropertyBlank(configurableDescribableType, propertyName);
+		return getSnapshot().isOverrideAllowed(configurableDescribableType, propertyName);
 	}
 	
 	public final <V> V getExpandedPropertyValueOrDefaultValueIfOverrideDisallowed(Class<?> configurableDescribableType, PrintStream log, EnvVars envVars, String propertyName, V currentValue) throws AbortWithMessageException {
 		return getExpandedPropertyValueOrDefaultValueIfOverrideDisallowed(configurableDescribableType, log, envVars, propertyName, currentValue, false);
 	}
 	
-	@SuppressWarnings("unchecked")
 	public final <V> V getExpandedPropertyValueOrDefaultValueIfOverrideDisallowed(Class<?> configurableDescribableType, PrintStream log, EnvVars envVars, String propertyName, V currentValue, boolean overrideFailOnOverride) throws AbortWithMessageException {
-		V result = null;
-		if ( isOverrideAllowed(configurableDescribableType, propertyName) ) {
-			result = currentValue;
-		} else {
-			result = (V)getGlobalConfigurationPropertyValue(configurableDescribableType, propertyName, Object.class);
-			if ( log != null && !ObjectUtils.equals(result, currentValue)) { 
-				if ( !overrideFailOnOverride && getGlobalConfiguration(configurableDescribableType).isFailOnOverride() ) {
-					throw new AbortWithMessageException("Property "+propertyName+" may not be overridden (default value: '"+result+"', supplied value: '"+currentValue+"')");
-				} else {
-					log.println("[WARN] Property "+propertyName+" may not be overridden, using default value '"+result+"' instead of supplied value '"+currentValue+"'");
-				}
-			}
-		}
-		if ( envVars != null && result instanceof String && StringUtils.isNotBlank((String)result) ) {
-			result = (V)envVars.expand((String)result);
-		}
-		return result;
+		return getSnapshot().getExpandedPropertyValueOrDefaultValueIfOverrideDisallowed(configurableDescribableType, log, envVars, propertyName, currentValue, overrideFailOnOverride);
 	}
 
-	@SuppressWarnings("unchecked")
 	public final <R> R getGlobalConfigurationPropertyValue(Class<?> configurableDescribableType, String propertyName, Class<R> returnType) {
-		AbstractConfigurationForConfigurable config = getGlobalConfiguration(configurableDescribableType);
-		try {
-			return config == null ? null : (R)ReflectionUtils.getPublicProperty(config.getTarget(), propertyName);
-		} catch (InvocationTargetException | NoSuchMethodException | IllegalAccessException e) {
-			throw new RuntimeException("Error getting property value "+propertyName+" on "+config, e);
-		}
+		return getSnapshot().getGlobalConfigurationPropertyValue(configurableDescribableType, propertyName, returnType);
 	}
 	
 	public final boolean isGlobalConfigurationPropertyBlank(Class<?> configurableDescribableType, String propertyName) {
-		Object value = getGlobalConfigurationPropertyValue(configurableDescribableType, propertyName, Object.class);
-		if ( value instanceof String ) {
-			return StringUtils.isBlank((String)value);
-		} else {
-			return value==null;
-		}
-	}
-	
-	private AbstractConfigurationForConfigurable getGlobalConfiguration(Class<?> configurableDescribableType) {
-		AbstractConfigurationForConfigurable result = getTargetTypeToDynamicGlobalConfigurationsMap().get(configurableDescribableType);
-		if ( result == null ) {
-			result = getTargetTypeToStaticGlobalConfigurationsMap().get(configurableDescribableType);
-		}
+		return getSnapshot().isGlobalConfigurationPropertyBlank(configurableDescribableType, propertyName);
+	}
+	
+	/**
+	 * Build a new {@link GlobalConfigurationSnapshot} from the current configuration lists,
+	 * and publish it for subsequent lookups. Callers must hold the lock on this instance.
+	 * @return Published {@link GlobalConfigurationSnapshot}
+	 */
+	private GlobalConfigurationSnapshot publishSnapshot() {
+		GlobalConfigurationSnapshot result = new GlobalConfigurationSnapshot(this, ++snapshotVersion, getDynamicGlobalConfigurationsList(), getStaticGlobalConfigurationsList());
+		snapshot = result;
+		// Job configuration descriptors are filtered based on global configuration availability
+		ConfigurableDescriptorListCache.invalidateAll();
 		return result;
 	}
-
-	private final Map<Class<? extends Describable<?>>, AbstractConfigurationForConfigurable> getTargetTypeToDynamicGlobalConfigurationsMap() {
-		if ( targetTypeToDynamicGlobalConfigurationsMap==null ) {
-			targetTypeToDynamicGlobalConfigurationsMap = createTargetTypesToDefaultConfigsMap(getDynamicGlobalConfigurationsList());
-		}
-		return targetTypeToDynamicGlobalConfigurationsMap;
-	}
-	
-	private final Map<Class<? extends Describable<?>>, AbstractConfigurationForConfigurable> getTargetTypeToStaticGlobalConfigurationsMap() {
-		if ( targetTypeToStaticGlobalConfigurationsMap==null ) {
-			targetTypeToStaticGlobalConfigurationsMap = createTargetTypesToDefaultConfigsMap(getStaticGlobalConfigurationsList());
-		}
-		return targetTypeToStaticGlobalConfigurationsMap;
-	}
-
-	private Map<Class<? extends Describable<?>>, AbstractConfigurationForConfigurable> createTargetTypesToDefaultConfigsMap(List<AbstractConfigurationForConfigurable> defaultConfigs) {
-		return defaultConfigs==null ? new HashMap<>() : Maps.uniqueIndex(defaultConfigs, new Function<AbstractConfigurationForConfigurable, Class<? extends Describable<?>>> () {
-			@Override
-			public Class<? extends Describable<?>> apply(AbstractConfigurationForConfigurable input) {
-				return input.getTargetType();
-			}
-		    
-		});
-	}
 	
 	private DescribableList<AbstractConfigurationForConfigurable,AbstractDescriptorConfigurationForConfigurable> addDefaultDescribables(DescribableList<AbstractConfigurationForConfigurable,AbstractDescriptorConfigurationForConfigurable> list, List<? extends AbstractDescriptorConfigurationForConfigurable> descriptorList) {
         for ( AbstractDescriptorConfigurationForConfigurable descriptor : descriptorList ) {
@@ -251,24 +204,32 @@ public abstract class AbstractGlobalConfiguration<T extends AbstractGlobalConfig
 	protected abstract <D extends AbstractDescriptorConfigurationForConfigurable> Collection<Class<D>> getStaticGlobalConfigurationDescriptorTypes();
 	
 	@Override
-	public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
-		try {
-			getDynamicGlobalConfigurationsList().rebuildHetero(req, json, getAllDynamicGlobalConfigurationDescriptors(), "dynamicGlobalConfigurationsList");
-		} catch (IOException e) {
-			throw new FormException("Error updating configuration", e, "dynamicGlobalConfigurationsList");
-		} finally {
-			this.targetTypeToDynamicGlobalConfigurationsMap = null;
-		}
+	public synchronized void load() {
+		super.load();
+		// Configuration lists may have been replaced; build a new snapshot on next access
+		snapshot = null;
+	}
+
+	@Override
+	public synchronized boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+		// Running builds keep using the current snapshot until we publish a new one below
 		try {
-			JSONObject staticGlobalConfigurationJSON = json.getJSONObject("staticGlobalConfigurationsList");
-			if ( staticGlobalConfigurationJSON!=null && !staticGlobalConfigurationJSON.isNullObject() ) {
-				getStaticGlobalConfigurationsList().rebuild(req, staticGlobalConfigurationJSON, getAllStaticGlobalConfigurationDescriptors());
+			try {
+				getDynamicGlobalConfigurationsList().rebuildHetero(req, json, getAllDynamicGlobalConfigurationDescriptors(), "dynamicGlobalConfigurationsList");
+			} catch (IOException e) {
+				throw new FormException("Error updating configuration", e, "dynamicGlobalConfigurationsList");
+			}
+			try {
+				JSONObject staticGlobalConfigurationJSON = json.getJSONObject("staticGlobalConfigurationsList");
+				if ( staticGlobalConfigurationJSON!=null && !staticGlobalConfigurationJSON.isNullObject() ) {
+					getStaticGlobalConfigurationsList().rebuild(req, staticGlobalConfigurationJSON, getAllStaticGlobalConfigurationDescriptors());
+				}
+			} catch (IOException e) {
+				throw new FormException("Error updating configuration", e, "staticGlobalConfigurationsList");
 			}
-		} catch (IOException e) {
-			throw new FormException("Error updating configuration", e, "staticGlobalConfigurationsList");
 		} finally {
-			this.targetTypeToStaticGlobalConfigurationsMap = null;
+			publishSnapshot();
 		}
 		return super.configure(req, json);
 	}
-}
\ No newline at end of file
+}
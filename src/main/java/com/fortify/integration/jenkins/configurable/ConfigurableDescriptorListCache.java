@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.configurable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.springframework.core.OrderComparator;
+
+import hudson.ExtensionList;
+import hudson.ExtensionListListener;
+import hudson.model.Descriptor;
+import jenkins.model.Jenkins;
+
+/**
+ * <p>Memoized, ordered list of descriptors for a given set of descriptor types, as
+ * used to render global and job configuration pages. Looking up the extension lists,
+ * filtering and sorting is done only once, until the cached list is invalidated.</p>
+ * 
+ * <p>All cached lists are invalidated whenever any of the underlying extension lists
+ * changes (for example when a plugin is dynamically loaded), or when 
+ * {@link #invalidateAll()} is called, for example because a new global configuration
+ * has been published that may affect descriptor filtering.</p>
+ * 
+ * @author Ruud Senden
+ *
+ * @param <T> Base descriptor type
+ */
+final class ConfigurableDescriptorListCache<T extends Descriptor<?>> {
+	private static final AtomicLong GENERATION = new AtomicLong();
+	private static final Set<ExtensionList<?>> LISTENED_EXTENSION_LISTS = Collections.newSetFromMap(new ConcurrentHashMap<ExtensionList<?>, Boolean>());
+	private static final ExtensionListListener INVALIDATING_LISTENER = new ExtensionListListener() {
+		@Override
+		public void onChange() {
+			invalidateAll();
+		}
+	};
+	private volatile Entry entry;
+	
+	/**
+	 * Invalidate all cached descriptor lists
+	 */
+	static void invalidateAll() {
+		GENERATION.incrementAndGet();
+	}
+	
+	/**
+	 * Get the ordered list of descriptors for the given types that match the given filter, 
+	 * either from cache or by querying the extension lists for the given types.
+	 * @param types Descriptor types; should be the same on every invocation
+	 * @param filter Optional filter; should give the same results on every invocation, as long as the global configuration doesn't change
+	 * @return Unmodifiable list of matching descriptors, sorted using {@link OrderComparator}
+	 */
+	@SuppressWarnings("unchecked")
+	public <D extends T> List<D> get(Collection<Class<D>> types, Predicate<? super D> filter) {
+		Entry current = entry;
+		if ( current == null || current.generation != GENERATION.get() ) {
+			// Capture the generation before querying, so invalidations during the query are not lost
+			long generation = GENERATION.get();
+			current = new Entry(generation, query(types, filter));
+			entry = current;
+		}
+		return (List<D>)current.descriptors;
+	}
+	
+	private static <D extends Descriptor<?>> List<D> query(Collection<Class<D>> types, Predicate<? super D> filter) {
+		List<D> result = new ArrayList<>();
+		for ( Class<D> type : types ) {
+			ExtensionList<D> list = Jenkins.getInstance().getExtensionList(type);
+			if ( LISTENED_EXTENSION_LISTS.add(list) ) {
+				list.addListener(INVALIDATING_LISTENER);
+			}
+			result.addAll(list);
+		}
+		if ( filter != null ) {
+			result.removeIf(new Predicate<D>() {
+				@Override
+				public boolean test(D d) {
+					return !filter.test(d);
+				}
+			});
+		}
+		result.sort(new OrderComparator());
+		return Collections.unmodifiableList(result);
+	}
+	
+	private static final class Entry {
+		private final long generation;
+		private final List<?> descriptors;
+		
+		public Entry(long generation, List<?> descriptors) {
+			this.generation = generation;
+			this.descriptors = descriptors;
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.configurable;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.util.ClassUtils;
+
+/**
+ * <p>Table of public bean property getters and setters for a single class, built once per class 
+ * using {@link MethodHandle}s. Reading or copying property values through this table avoids the
+ * per-call introspection and reflection overhead of looking up properties by name 
+ * using reflection utilities.</p>
+ * 
+ * <p>Instances are obtained through {@link #forClass(Class)}, which caches the table
+ * for every class in a {@link ClassValue}, so tables don't prevent classes (for example
+ * from dynamically loaded plugins) from being unloaded.</p>
+ * 
+ * @author Ruud Senden
+ *
+ */
+final class ConfigurablePropertyAccessors {
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final ClassValue<ConfigurablePropertyAccessors> ACCESSORS = new ClassValue<ConfigurablePropertyAccessors>() {
+		@Override
+		protected ConfigurablePropertyAccessors computeValue(Class<?> type) {
+			return new ConfigurablePropertyAccessors(type);
+		}
+	};
+	
+	private final Class<?> type;
+	private final Map<String, Property> getters;
+	private final Map<String, Property> setters;
+	/** Copy plans for copying properties from a given source type to our type, built on first use */
+	private final ConcurrentMap<Class<?>, CopyPlan> copyPlans = new ConcurrentHashMap<>();
+	
+	private ConfigurablePropertyAccessors(Class<?> type) {
+		this.type = type;
+		Map<String, Property> getters = new HashMap<>();
+		Map<String, Property> setters = new HashMap<>();
+		try {
+			for ( PropertyDescriptor pd : Introspector.getBeanInfo(type).getPropertyDescriptors() ) {
+				Method readMethod = pd.getReadMethod();
+				if ( isPublic(readMethod) ) {
+					getters.put(pd.getName(), new Property(pd.getName(), readMethod.getReturnType(), unreflect(readMethod).asType(GETTER_TYPE)));
+				}
+				Method writeMethod = pd.getWriteMethod();
+				if ( isPublic(writeMethod) ) {
+					setters.put(pd.getName(), new Property(pd.getName(), writeMethod.getParameterTypes()[0], unreflect(writeMethod).asType(SETTER_TYPE)));
+				}
+			}
+		} catch ( IntrospectionException | IllegalAccessException e ) {
+			throw new RuntimeException("Error building property accessors for "+type.getName(), e);
+		}
+		this.getters = Collections.unmodifiableMap(getters);
+		this.setters = Collections.unmodifiableMap(setters);
+	}
+	
+	/**
+	 * @param type Class for which to get the property accessors
+	 * @return Cached {@link ConfigurablePropertyAccessors} instance for the given class
+	 */
+	public static ConfigurablePropertyAccessors forClass(Class<?> type) {
+		return ACCESSORS.get(type);
+	}
+	
+	/**
+	 * Copy all properties that can be read from the given source object, and written 
+	 * to the given target object, similar to Spring's BeanUtils.copyProperties(). 
+	 * The set of properties to be copied is determined only once for every
+	 * combination of source and target type.
+	 * @param source Object to copy the property values from
+	 * @param target Object to copy the property values to
+	 */
+	public static void copyProperties(Object source, Object target) {
+		forClass(target.getClass()).getCopyPlan(source.getClass()).copy(source, target);
+	}
+	
+	/**
+	 * @param propertyName Property name
+	 * @return true if the class has a public getter for the given property, false otherwise
+	 */
+	public boolean hasProperty(String propertyName) {
+		return getters.containsKey(propertyName);
+	}
+	
+	/**
+	 * Get the value of the given property from the given object
+	 * @param object Object to get the property value from; must be an instance of the class for which this table was built 
+	 * @param propertyName Property name
+	 * @return Property value
+	 * @throws IllegalArgumentException if the class doesn't have a public getter for the given property
+	 */
+	public Object get(Object object, String propertyName) {
+		Property getter = getters.get(propertyName);
+		if ( getter == null ) {
+			throw new IllegalArgumentException("No public getter for property "+propertyName+" on "+type.getName());
+		}
+		try {
+			return getter.handle.invokeExact(object);
+		} catch ( RuntimeException | Error e ) {
+			throw e;
+		} catch ( Throwable t ) {
+			throw new RuntimeException("Error getting property value "+propertyName+" on "+object, t);
+		}
+	}
+	
+	private CopyPlan getCopyPlan(Class<?> sourceType) {
+		CopyPlan result = copyPlans.get(sourceType);
+		if ( result == null ) {
+			result = new CopyPlan(forClass(sourceType), this);
+			CopyPlan existing = copyPlans.putIfAbsent(sourceType, result);
+			if ( existing != null ) { result = existing; }
+		}
+		return result;
+	}
+	
+	private static boolean isPublic(Method method) {
+		return method != null && Modifier.isPublic(method.getModifiers());
+	}
+	
+	private static MethodHandle unreflect(Method method) throws IllegalAccessException {
+		if ( !Modifier.isPublic(method.getDeclaringClass().getModifiers()) ) {
+			// Public methods inherited from a non-public class are not accessible through the public lookup
+			method.setAccessible(true);
+		}
+		return MethodHandles.publicLookup().unreflect(method);
+	}
+	
+	/**
+	 * Single property getter or setter
+	 */
+	private static final class Property {
+		private final String name;
+		private final Class<?> type;
+		private final MethodHandle handle;
+		
+		public Property(String name, Class<?> type, MethodHandle handle) {
+			this.name = name;
+			this.type = type;
+			this.handle = handle;
+		}
+	}
+	
+	/**
+	 * Pre-computed list of getter/setter pairs for copying properties between two types
+	 */
+	private static final class CopyPlan {
+		private final Property[] getters;
+		private final Property[] setters;
+		
+		public CopyPlan(ConfigurablePropertyAccessors source, ConfigurablePropertyAccessors target) {
+			List<Property> getters = new ArrayList<>();
+			List<Property> setters = new ArrayList<>();
+			for ( Property setter : target.setters.values() ) {
+				Property getter = source.getters.get(setter.name);
+				if ( getter != null && ClassUtils.isAssignable(setter.type, getter.type) ) {
+					getters.add(getter);
+					setters.add(setter);
+				}
+			}
+			this.getters = getters.toArray(new Property[getters.size()]);
+			this.setters = setters.toArray(new Property[setters.size()]);
+		}
+		
+		public void copy(Object source, Object target) {
+			for ( int i = 0 ; i < getters.length ; i++ ) {
+				try {
+					Object value = getters[i].handle.invokeExact(source);
+					setters[i].handle.invokeExact(target, value);
+				} catch ( RuntimeException | Error e ) {
+					throw e;
+				} catch ( Throwable t ) {
+					throw new RuntimeException("Error copying property "+setters[i].name+" from "+source+" to "+target, t);
+				}
+			}
+		}
+	}
+}
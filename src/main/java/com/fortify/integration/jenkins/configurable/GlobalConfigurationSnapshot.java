@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.configurable;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.lang.StringUtils;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import hudson.EnvVars;
+import hudson.model.Describable;
+
+/**
+ * <p>Immutable, versioned view of the configurations held by an {@link AbstractGlobalConfiguration}
+ * instance. Saving the global configuration creates new {@link AbstractConfigurationForConfigurable}
+ * instances, from which a new snapshot is built and published as a whole; existing snapshots
+ * keep referencing the configuration instances that were current when they were built. As such,
+ * readers never observe a partially updated global configuration, and don't need any locking.</p>
+ *
+ * <p>A run can pin the snapshot that was current when it started using {@link #pin()}; while
+ * pinned, all global configuration lookups on the pinning thread use the pinned snapshot,
+ * even if the global configuration is saved in the meantime.</p>
+ *
+ * <p>Override decisions are derived from the immutable configuration state, and are computed
+ * at most once per configurable type and property for every snapshot.</p>
+ *
+ * @author Ruud Senden
+ *
+ */
+public final class GlobalConfigurationSnapshot {
+	private static final ThreadLocal<GlobalConfigurationSnapshot> PINNED = new ThreadLocal<>();
+	private final AbstractGlobalConfiguration<?> owner;
+	private final long version;
+	private final Map<Class<? extends Describable<?>>, AbstractConfigurationForConfigurable> dynamicConfigurations;
+	private final Map<Class<? extends Describable<?>>, AbstractConfigurationForConfigurable> staticConfigurations;
+	private final ConcurrentMap<Class<?>, ConcurrentMap<String, Boolean>> overrideAllowedMatrix = new ConcurrentHashMap<>();
+
+	GlobalConfigurationSnapshot(AbstractGlobalConfiguration<?> owner, long version, List<AbstractConfigurationForConfigurable> dynamicConfigurations, List<AbstractConfigurationForConfigurable> staticConfigurations) {
+		this.owner = owner;
+		this.version = version;
+		this.dynamicConfigurations = indexByTargetType(dynamicConfigurations);
+		this.staticConfigurations = indexByTargetType(staticConfigurations);
+	}
+
+	/**
+	 * @param owner {@link AbstractGlobalConfiguration} instance
+	 * @return The snapshot of the given {@link AbstractGlobalConfiguration} pinned on the current thread, or null if none
+	 */
+	static GlobalConfigurationSnapshot getPinned(AbstractGlobalConfiguration<?> owner) {
+		GlobalConfigurationSnapshot pinned = PINNED.get();
+		return pinned != null && pinned.owner == owner ? pinned : null;
+	}
+
+	/**
+	 * Pin this snapshot on the current thread, until the returned {@link Pin} is closed.
+	 * Usually used in a try-with-resources statement.
+	 * @return {@link Pin} that restores the previously pinned snapshot (if any) when closed
+	 */
+	public Pin pin() {
+		Pin result = new Pin(PINNED.get());
+		PINNED.set(this);
+		return result;
+	}
+
+	/**
+	 * @return Version of this snapshot; incremented every time the global configuration is saved
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public boolean isStatic(Class<?> configurableDescribableType) {
+		return staticConfigurations.containsKey(configurableDescribableType);
+	}
+
+	public boolean isDynamic(Class<?> configurableDescribableType) {
+		return dynamicConfigurations.containsKey(configurableDescribableType);
+	}
+
+	public boolean isGlobalConfigurationAvailable(Class<?> configurableDescribableType) {
+		return isDynamic(configurableDescribableType) || isStatic(configurableDescribableType);
+	}
+
+	public boolean isEnabledByDefault(Class<?> configurableDescribableType) {
+		AbstractConfigurationForConfigurable config = getGlobalConfiguration(configurableDescribableType);
+		return config != null && config.isEnabledByDefault();
+	}
+
+	@SuppressWarnings("unchecked")
+	public <D extends Describable<?>> D getConfiguration(Class<D> type) {
+		AbstractConfigurationForConfigurable config = getGlobalConfiguration(type);
+		return config == null ? null : (D)config.getTarget();
+	}
+
+	public boolean isOverrideAllowed(Class<?> configurableDescribableType, String propertyName) {
+		ConcurrentMap<String, Boolean> row = overrideAllowedMatrix.get(configurableDescribableType);
+		if ( row == null ) {
+			row = new ConcurrentHashMap<>();
+			ConcurrentMap<String, Boolean> existing = overrideAllowedMatrix.putIfAbsent(configurableDescribableType, row);
+			if ( existing != null ) { row = existing; }
+		}
+		Boolean result = row.get(propertyName);
+		if ( result == null ) {
+			result = computeOverrideAllowed(configurableDescribableType, propertyName);
+			row.put(propertyName, result);
+		}
+		return result;
+	}
+
+	private boolean computeOverrideAllowed(Class<?> configurableDescribableType, String propertyName) {
+		AbstractConfigurationForConfigurable config = getGlobalConfiguration(configurableDescribableType);
+		if ( config==null ) { return true; }
+		if ( config.isOverrideAllowed() ) { return true; }
+		return isGlobalConfigurationPropertyBlank(configurableDescribableType, propertyName);
+	}
+
+	@SuppressWarnings("unchecked")
+	public <V> V getExpandedPropertyValueOrDefaultValueIfOverrideDisallowed(Class<?> configurableDescribableType, PrintStream log, EnvVars envVars, String propertyName, V currentValue, boolean overrideFailOnOverride) throws AbortWithMessageException {
+		V result = null;
+		if ( isOverrideAllowed(configurableDescribableType, propertyName) ) {
+			result = currentValue;
+		} else {
+			result = (V)getGlobalConfigurationPropertyValue(configurableDescribableType, propertyName, Object.class);
+			if ( log != null && !ObjectUtils.equals(result, currentValue)) {
+				if ( !overrideFailOnOverride && getGlobalConfiguration(configurableDescribableType).isFailOnOverride() ) {
+					throw new AbortWithMessageException("Property "+propertyName+" may not be overridden (default value: '"+result+"', supplied value: '"+currentValue+"')");
+				} else {
+					log.println("[WARN] Property "+propertyName+" may not be overridden, using default value '"+result+"' instead of supplied value '"+currentValue+"'");
+				}
+			}
+		}
+		if ( envVars != null && result instanceof String && StringUtils.isNotBlank((String)result) ) {
+			result = (V)envVars.expand((String)result);
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	public <R> R getGlobalConfigurationPropertyValue(Class<?> configurableDescribableType, String propertyName, Class<R> returnType) {
+		AbstractConfigurationForConfigurable config = getGlobalConfiguration(configurableDescribableType);
+		if ( config == null ) { return null; }
+		Object target = config.getTarget();
+		try {
+			return (R)ConfigurablePropertyAccessors.forClass(target.getClass()).get(target, propertyName);
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeException("Error getting property value "+propertyName+" on "+config, e);
+		}
+	}
+
+	public boolean isGlobalConfigurationPropertyBlank(Class<?> configurableDescribableType, String propertyName) {
+		Object value = getGlobalConfigurationPropertyValue(configurableDescribableType, propertyName, Object.class);
+		if ( value instanceof String ) {
+			return StringUtils.isBlank((String)value);
+		} else {
+			return value==null;
+		}
+	}
+
+	private AbstractConfigurationForConfigurable getGlobalConfiguration(Class<?> configurableDescribableType) {
+		AbstractConfigurationForConfigurable result = dynamicConfigurations.get(configurableDescribableType);
+		if ( result == null ) {
+			result = staticConfigurations.get(configurableDescribableType);
+		}
+		return result;
+	}
+
+	private static Map<Class<? extends Describable<?>>, AbstractConfigurationForConfigurable> indexByTargetType(List<AbstractConfigurationForConfigurable> configs) {
+		return configs==null ? ImmutableMap.<Class<? extends Describable<?>>, AbstractConfigurationForConfigurable>of() : Maps.uniqueIndex(configs, new Function<AbstractConfigurationForConfigurable, Class<? extends Describable<?>>> () {
+			@Override
+			public Class<? extends Describable<?>> apply(AbstractConfigurationForConfigurable input) {
+				return input.getTargetType();
+			}
+		});
+	}
+
+	@Override
+	public String toString() {
+		return "GlobalConfigurationSnapshot[version="+version+"]";
+	}
+
+	/**
+	 * Restores the previously pinned snapshot when closed; see {@link GlobalConfigurationSnapshot#pin()}
+	 */
+	public static final class Pin implements AutoCloseable {
+		private final GlobalConfigurationSnapshot previous;
+
+		private Pin(GlobalConfigurationSnapshot previous) {
+			this.previous = previous;
+		}
+
+		@Override
+		public void close() {
+			if ( previous == null ) {
+				PINNED.remove();
+			} else {
+				PINNED.set(previous);
+			}
+		}
+	}
+}
@@ -26,6 +26,7 @@ package com.fortify.integration.jenkins.ssc;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -40,12 +41,13 @@ import com.fortify.integration.jenkins.configurable.AbstractConfigurable;
 import com.fortify.integration.jenkins.configurable.AbstractConfigurable.AbstractDescriptorConfigurable;
 import com.fortify.integration.jenkins.configurable.AbstractConfigurableWithErrorHandler.ErrorData;
 import com.fortify.integration.jenkins.configurable.AbstractGlobalConfiguration;
+import com.fortify.integration.jenkins.configurable.GlobalConfigurationSnapshot;
 import com.fortify.integration.jenkins.ssc.configurable.FortifySSCApplicationAndVersionName;
 import com.fortify.integration.jenkins.ssc.configurable.FortifySSCApplicationAndVersionName.FortifySSCDescriptorApplicationAndVersionName;
 import com.fortify.integration.jenkins.ssc.configurable.op.AbstractFortifySSCOp;
 import com.fortify.integration.jenkins.ssc.configurable.op.AbstractFortifySSCOp.AbstractFortifySSCDescriptorOp;
+import com.fortify.integration.jenkins.ssc.configurable.op.FortifySSCRunContext;
 
-import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
@@ -83,7 +85,8 @@ public class FortifySSCBuilder extends AbstractBuilder {
 	public void perform(Run<?,?> build, FilePath workspace, Launcher launcher, TaskListener listener) throws InterruptedException, IOException {
 		PrintStream log = listener.getLogger();
 		log.println("[INFO] Fortify Jenkins plugin");
-		SSCAuthenticatingRestConnection conn = FortifySSCGlobalConfiguration.get().conn();
+		FortifySSCGlobalConfiguration globalConfiguration = FortifySSCGlobalConfiguration.get();
+		SSCAuthenticatingRestConnection conn = globalConfiguration.conn();
 		if ( conn == null ) {
 			log.println("[ERROR] SSC connection not configured in global configuration");
 			build.setResult(Result.FAILURE);
@@ -93,41 +96,46 @@ public class FortifySSCBuilder extends AbstractBuilder {
 			if ( describables==null || describables.size()==0 ) {
 				log.println("[WARN] There are no operations configured to be performed");
 			} else {
+				GlobalConfigurationSnapshot globalConfigurationSnapshot = globalConfiguration.getSnapshot();
+				log.println("[INFO] Using global configuration version " + globalConfigurationSnapshot.getVersion());
+				FortifySSCRunContext context = new FortifySSCRunContext(getWith(), build, workspace, launcher, listener, build.getEnvironment(listener), conn, globalConfigurationSnapshot);
 				ErrorData currentErrorData = new ErrorData();
+				List<AbstractFortifySSCOp> ops = new ArrayList<>(describables.size());
 				for ( AbstractConfigurable describable : describables) {
-					if (describable != null) {
-						if ( !perform(describable, build, workspace, launcher, listener, currentErrorData) ) { break; }
+					if (describable instanceof AbstractFortifySSCOp) {
+						ops.add((AbstractFortifySSCOp)describable);
 					}
 				}
+				new FortifySSCOpScheduler(this, globalConfiguration.getMaxParallelOperations()).perform(ops, context, currentErrorData);
 				currentErrorData.markBuild(build);
 			}
 		}
 	}
 
 	/**
-	 * Perform the given operation
+	 * Perform the given operation. This method may be called concurrently for
+	 * different operations; see {@link FortifySSCOpScheduler}.
 	 * @param describable The {@link AbstractFortifySSCOp} operation to perform
-	 * @param run Current {@link Run}
-	 * @param workspace Current workspace
-	 * @param launcher Current {@link Launcher}
-	 * @param listener Current {@link TaskListener}
+	 * @param context {@link FortifySSCRunContext} shared by all operations performed during the current run
 	 * @param currentErrorData Current {@link ErrorData}
 	 * @return true if we can continue with the next operation, false otherwise
 	 * @throws InterruptedException May be thrown by various Jenkins methods
 	 * @throws IOException May be thrown by various Jenkins methods
 	 */
-	protected boolean perform(AbstractConfigurable describable, Run<?, ?> run, FilePath workspace, Launcher launcher, TaskListener listener, ErrorData currentErrorData) throws InterruptedException, IOException {
-		PrintStream log = listener.getLogger();
-		EnvVars env = run.getEnvironment(listener);
+	protected boolean perform(AbstractConfigurable describable, FortifySSCRunContext context, ErrorData currentErrorData) throws InterruptedException, IOException {
+		PrintStream log = context.getLog();
 		if ( describable instanceof AbstractFortifySSCOp ) {
 			AbstractFortifySSCOp op = (AbstractFortifySSCOp)describable;
-			listener.getLogger().println("[INFO] Start operation '"+op.getDescriptor().getDisplayName()+"'");
-			try {
-				op.performWithCheck(getWith(), run, workspace, launcher, listener);
-			} catch ( Exception e ) {
-				return !op.handleException(log, env, e, currentErrorData);
-			} finally {
-				listener.getLogger().println("[INFO] End operation '"+op.getDescriptor().getDisplayName()+"'");
+			log.println("[INFO] Start operation '"+op.getDescriptor().getDisplayName()+"'");
+			// Operations may run on separate threads, so we pin the run's global configuration snapshot for every operation
+			try ( GlobalConfigurationSnapshot.Pin pin = context.getGlobalConfigurationSnapshot().pin() ) {
+				try {
+					op.performWithCheck(context);
+				} catch ( Exception e ) {
+					return !op.handleException(log, context.getEnv(), e, currentErrorData);
+				} finally {
+					log.println("[INFO] End operation '"+op.getDescriptor().getDisplayName()+"'");
+				}
 			}
 		}
 		return true;
@@ -7,6 +7,7 @@ import java.util.Collection;
 import javax.servlet.ServletException;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.http.pool.PoolStats;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
@@ -15,8 +16,14 @@ import com.fortify.client.ssc.api.SSCApplicationVersionAPI;
 import com.fortify.client.ssc.connection.SSCAuthenticatingRestConnection;
 import com.fortify.integration.jenkins.configurable.AbstractConfigurationForConfigurable.AbstractDescriptorConfigurationForConfigurable;
 import com.fortify.integration.jenkins.configurable.AbstractGlobalConfiguration;
+import com.fortify.integration.jenkins.ssc.cache.FortifySSCApplicationCatalog;
+import com.fortify.integration.jenkins.ssc.cache.FortifySSCApplicationVersionIdCache;
+import com.fortify.integration.jenkins.ssc.cache.FortifySSCIssueTemplateCatalog;
 import com.fortify.integration.jenkins.ssc.configurable.FortifySSCApplicationAndVersionNameConfiguration.FortifySSCDescriptorApplicationAndVersionNameConfiguration;
 import com.fortify.integration.jenkins.ssc.configurable.op.AbstractFortifySSCConfigurationForOp.AbstractFortifySSCDescriptorConfigurationForOp;
+import com.fortify.integration.jenkins.ssc.connection.FortifySSCConnectionManager;
+import com.fortify.integration.jenkins.ssc.connection.FortifySSCTokenCache;
+import com.fortify.integration.jenkins.ssc.upload.FortifySSCArtifactStatusPoller;
 
 import hudson.Extension;
 import hudson.util.FormValidation;
@@ -25,8 +32,16 @@ import net.sf.json.JSONObject;
 
 @Extension
 public class FortifySSCGlobalConfiguration extends AbstractGlobalConfiguration<FortifySSCGlobalConfiguration> {
-	private String sscUrl ="";
-	private transient SSCAuthenticatingRestConnection conn = null;
+	private volatile String sscUrl ="";
+	private int maxConnectionsTotal = FortifySSCConnectionManager.DEFAULT_MAX_CONNECTIONS_TOTAL;
+	private int maxConnectionsPerRoute = FortifySSCConnectionManager.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+	private int idleConnectionTimeoutSeconds = FortifySSCConnectionManager.DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS;
+	private int maxParallelOperations = FortifySSCOpScheduler.DEFAULT_MAX_PARALLEL_OPERATIONS;
+	private final transient FortifySSCConnectionManager connectionManager = new FortifySSCConnectionManager();
+	private final transient FortifySSCApplicationVersionIdCache applicationVersionIdCache = new FortifySSCApplicationVersionIdCache();
+	private final transient FortifySSCApplicationCatalog applicationCatalog = new FortifySSCApplicationCatalog();
+	private final transient FortifySSCIssueTemplateCatalog issueTemplateCatalog = new FortifySSCIssueTemplateCatalog();
+	private final transient FortifySSCArtifactStatusPoller artifactStatusPoller = new FortifySSCArtifactStatusPoller();
 	
     /** @return the singleton instance */
     public static final FortifySSCGlobalConfiguration get() {
@@ -35,6 +50,7 @@ public class FortifySSCGlobalConfiguration extends AbstractGlobalConfiguration<F
 
     public FortifySSCGlobalConfiguration() {
     	load();
+    	configureConnectionManager();
     }
 
 	public String getSscUrl() {
@@ -47,11 +63,89 @@ public class FortifySSCGlobalConfiguration extends AbstractGlobalConfiguration<F
         save(); // Save immediately, so other global config sections can access SSC
     }
     
+	public int getMaxConnectionsTotal() {
+		return maxConnectionsTotal;
+	}
+
+	@DataBoundSetter
+	public void setMaxConnectionsTotal(int maxConnectionsTotal) {
+		this.maxConnectionsTotal = maxConnectionsTotal;
+	}
+
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	@DataBoundSetter
+	public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+	}
+
+	public int getIdleConnectionTimeoutSeconds() {
+		return idleConnectionTimeoutSeconds;
+	}
+
+	@DataBoundSetter
+	public void setIdleConnectionTimeoutSeconds(int idleConnectionTimeoutSeconds) {
+		this.idleConnectionTimeoutSeconds = idleConnectionTimeoutSeconds;
+	}
+	
+	public int getMaxParallelOperations() {
+		return maxParallelOperations;
+	}
+
+	@DataBoundSetter
+	public void setMaxParallelOperations(int maxParallelOperations) {
+		this.maxParallelOperations = maxParallelOperations;
+	}
+	
+	public FortifySSCConnectionManager getConnectionManager() {
+		return connectionManager;
+	}
+	
+	public FortifySSCApplicationVersionIdCache getApplicationVersionIdCache() {
+		return applicationVersionIdCache;
+	}
+	
+	public FortifySSCApplicationCatalog getApplicationCatalog() {
+		return applicationCatalog;
+	}
+	
+	public FortifySSCIssueTemplateCatalog getIssueTemplateCatalog() {
+		return issueTemplateCatalog;
+	}
+	
+	public FortifySSCArtifactStatusPoller getArtifactStatusPoller() {
+		return artifactStatusPoller;
+	}
+	
+	/**
+	 * @return Human-readable statistics for the SSC connection pool, for display on the global configuration page
+	 */
+	public String getConnectionPoolStatistics() {
+		PoolStats stats = connectionManager.getStatistics();
+		return String.format("Leased: %d, Available: %d, Pending: %d, Max: %d", 
+				stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax());
+	}
+
+	/**
+	 * @return Human-readable statistics for the SSC authentication token cache, for display on the global configuration page
+	 */
+	public String getTokenCacheStatistics() {
+		FortifySSCTokenCache tokenCache = connectionManager.getTokenCache();
+		return String.format("Tokens generated: %d, Tokens reused: %d", tokenCache.getMintCount(), tokenCache.getReuseCount());
+	}
+
+	/**
+     * Get the {@link SSCAuthenticatingRestConnection} instance shared by all builds
+     * @return Shared {@link SSCAuthenticatingRestConnection} instance, or null if SSC URL has not been configured
+     */
     public SSCAuthenticatingRestConnection conn() {
-    	if ( this.conn == null && StringUtils.isNotBlank(sscUrl) ) {
-    		this.conn = SSCAuthenticatingRestConnection.builder().baseUrl(sscUrl).build();
-    	}
-    	return this.conn;
+    	return connectionManager.getConnection(sscUrl);
+    }
+    
+    private void configureConnectionManager() {
+    	connectionManager.configure(maxConnectionsTotal, maxConnectionsPerRoute, idleConnectionTimeoutSeconds);
     }
     
     @Override
@@ -67,8 +161,10 @@ public class FortifySSCGlobalConfiguration extends AbstractGlobalConfiguration<F
 	@Override
 	public boolean configure(StaplerRequest req, JSONObject json) throws hudson.model.Descriptor.FormException {
 		boolean result = super.configure(req, json);
-		// Update the connection objcet, in case sscUrl was changed without cliking the Validate button
-		this.conn = SSCAuthenticatingRestConnection.builder().baseUrl(sscUrl).build();
+		// The shared connection will be re-created on next access if sscUrl was changed 
+		configureConnectionManager();
+		// Cached id's may not be valid anymore if sscUrl was changed
+		applicationVersionIdCache.invalidateAll();
 		save();
 		return result;
 	}
@@ -80,9 +176,26 @@ public class FortifySSCGlobalConfiguration extends AbstractGlobalConfiguration<F
         return FormValidation.ok();
     }
 	
+	public FormValidation doCheckMaxConnectionsTotal(@QueryParameter String value) {
+		return FormValidation.validatePositiveInteger(value);
+	}
+	
+	public FormValidation doCheckMaxConnectionsPerRoute(@QueryParameter String value) {
+		return FormValidation.validatePositiveInteger(value);
+	}
+	
+	public FormValidation doCheckIdleConnectionTimeoutSeconds(@QueryParameter String value) {
+		return FormValidation.validatePositiveInteger(value);
+	}
+	
+	public FormValidation doCheckMaxParallelOperations(@QueryParameter String value) {
+		return FormValidation.validatePositiveInteger(value);
+	}
+	
 	public FormValidation doTestConnection(@QueryParameter("sscUrl") final String sscUrl) throws IOException, ServletException {
 		try {
-	    	this.conn = SSCAuthenticatingRestConnection.builder().baseUrl(sscUrl).build();
+	    	// Use a separate connection, to avoid replacing the connection used by running builds
+	    	SSCAuthenticatingRestConnection conn = connectionManager.createConnection(sscUrl);
 	    	conn.api(SSCApplicationVersionAPI.class).queryApplicationVersions().maxResults(1).build().getAll();
 	    	// TODO Fix this if possible (automatically save and return to config page)
 	        return FormValidation.ok("Success");
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.fortify.integration.jenkins.configurable.AbstractConfigurableWithErrorHandler.ErrorData;
+import com.fortify.integration.jenkins.ssc.configurable.op.AbstractFortifySSCOp;
+import com.fortify.integration.jenkins.ssc.configurable.op.FortifySSCRunContext;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import hudson.util.StreamTaskListener;
+
+/**
+ * <p>This class performs the operations configured for a {@link FortifySSCBuilder}
+ * instance. Each operation declares the operation types it depends on through
+ * {@link AbstractFortifySSCOp.AbstractFortifySSCDescriptorOp#getDependencies()};
+ * an operation is started as soon as all preceding operations that it depends on
+ * have completed. At most the configured maximum number of operations are performed
+ * in parallel.</p>
+ *
+ * <p>If an operation fails and is configured to stop on failure, any operations that
+ * haven't been started yet will be skipped, similar to sequential execution. Operations
+ * that are already running will be allowed to complete.</p>
+ *
+ * <p>When running operations in parallel, every line logged by an operation is prefixed
+ * with the operation name, and written to the build log as a whole, to keep the build
+ * log readable.</p>
+ *
+ * @author Ruud Senden
+ *
+ */
+final class FortifySSCOpScheduler {
+	public static final int DEFAULT_MAX_PARALLEL_OPERATIONS = 4;
+	private final FortifySSCBuilder builder;
+	private final int maxParallelOperations;
+
+	public FortifySSCOpScheduler(FortifySSCBuilder builder, int maxParallelOperations) {
+		this.builder = builder;
+		this.maxParallelOperations = maxParallelOperations>0 ? maxParallelOperations : DEFAULT_MAX_PARALLEL_OPERATIONS;
+	}
+
+	/**
+	 * Perform the given operations
+	 * @param ops Operations to be performed, in configured order
+	 * @param context {@link FortifySSCRunContext} shared by all operations performed during the current run
+	 * @param currentErrorData Current {@link ErrorData}
+	 * @throws InterruptedException May be thrown by various Jenkins methods
+	 * @throws IOException May be thrown by various Jenkins methods
+	 */
+	public void perform(List<AbstractFortifySSCOp> ops, FortifySSCRunContext context, ErrorData currentErrorData) throws InterruptedException, IOException {
+		if ( maxParallelOperations == 1 || ops.size() <= 1 ) {
+			performSequential(ops, context, currentErrorData);
+		} else {
+			performParallel(ops, context, currentErrorData);
+		}
+	}
+
+	private void performSequential(List<AbstractFortifySSCOp> ops, FortifySSCRunContext context, ErrorData currentErrorData) throws InterruptedException, IOException {
+		for ( AbstractFortifySSCOp op : ops ) {
+			if ( !builder.perform(op, context, currentErrorData) ) { break; }
+		}
+	}
+
+	private void performParallel(List<AbstractFortifySSCOp> ops, final FortifySSCRunContext context, final ErrorData currentErrorData) throws InterruptedException, IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxParallelOperations, ops.size()),
+				new NamingThreadFactory(new DaemonThreadFactory(), "Fortify SSC operation for "+context.getRun().getFullDisplayName()));
+		final AtomicBoolean stop = new AtomicBoolean(false);
+		List<CompletableFuture<Void>> futures = new ArrayList<>(ops.size());
+		try {
+			for ( int i = 0 ; i < ops.size() ; i++ ) {
+				final AbstractFortifySSCOp op = ops.get(i);
+				List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+				for ( int j = 0 ; j < i ; j++ ) {
+					if ( op.getDescriptor().dependsOn(ops.get(j)) ) { dependencies.add(futures.get(j)); }
+				}
+				futures.add(CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[dependencies.size()]))
+					.thenRunAsync(new Runnable() {
+						@Override
+						public void run() {
+							if ( stop.get() ) {
+								context.getLog().println("[INFO] Skipping operation '"+op.getDescriptor().getDisplayName()+"' due to earlier failure");
+							} else if ( !performWithPrefixedLog(op, context, currentErrorData) ) {
+								stop.set(true);
+							}
+						}
+					}, executor));
+			}
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).get();
+		} catch ( ExecutionException e ) {
+			Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+			if ( cause instanceof InterruptedException ) { throw (InterruptedException)cause; }
+			if ( cause instanceof IOException ) { throw (IOException)cause; }
+			if ( cause instanceof RuntimeException ) { throw (RuntimeException)cause; }
+			if ( cause instanceof Error ) { throw (Error)cause; }
+			throw new IOException(cause);
+		} finally {
+			// Interrupt any running operations if we were interrupted, or if any operation threw an unexpected exception
+			executor.shutdownNow();
+		}
+	}
+
+	private boolean performWithPrefixedLog(AbstractFortifySSCOp op, FortifySSCRunContext context, ErrorData currentErrorData) {
+		Charset charset = context.getRun().getCharset();
+		FortifySSCPrefixedLogOutputStream out = new FortifySSCPrefixedLogOutputStream(context.getLog(), "["+op.getDescriptor().getDisplayName()+"] ", charset);
+		StreamTaskListener listener = new StreamTaskListener(out, charset);
+		try {
+			return builder.perform(op, context.forListener(listener), currentErrorData);
+		} catch ( InterruptedException | IOException e ) {
+			throw new CompletionException(e);
+		} finally {
+			listener.getLogger().flush();
+			try {
+				out.close();
+			} catch ( IOException ignore ) {}
+		}
+	}
+}
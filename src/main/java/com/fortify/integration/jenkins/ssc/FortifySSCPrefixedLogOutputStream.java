@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+
+/**
+ * <p>This {@link OutputStream} implementation buffers all output until a full
+ * line has been written, and then writes that line, prefixed with a fixed
+ * string, to the underlying build log in a single operation.</p>
+ *
+ * <p>This allows multiple operations to log to the same build log in parallel,
+ * without lines of different operations being interleaved with each other.</p>
+ *
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCPrefixedLogOutputStream extends OutputStream {
+	private final PrintStream target;
+	private final byte[] prefix;
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+	/**
+	 * Create a new instance
+	 * @param target Build log to write prefixed lines to
+	 * @param prefix Prefix for every line written to the build log
+	 * @param charset Character set used to encode the prefix
+	 */
+	public FortifySSCPrefixedLogOutputStream(PrintStream target, String prefix, Charset charset) {
+		this.target = target;
+		this.prefix = prefix.getBytes(charset);
+	}
+
+	@Override
+	public synchronized void write(int b) throws IOException {
+		buffer.write(b);
+		if ( b == '\n' ) { writeLine(); }
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		int start = off;
+		for ( int i = off ; i < off+len ; i++ ) {
+			if ( b[i] == '\n' ) {
+				buffer.write(b, start, i+1-start);
+				writeLine();
+				start = i+1;
+			}
+		}
+		buffer.write(b, start, off+len-start);
+	}
+
+	/**
+	 * Write any remaining partial line to the build log.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if ( buffer.size() > 0 ) {
+			buffer.write('\n');
+			writeLine();
+		}
+	}
+
+	private void writeLine() {
+		synchronized (target) {
+			target.write(prefix, 0, prefix.length);
+			target.write(buffer.toByteArray(), 0, buffer.size());
+			target.flush();
+		}
+		buffer.reset();
+	}
+}
@@ -18,22 +18,40 @@
  */
 package com.fortify.integration.jenkins.ssc.action;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
 
+import com.fortify.integration.jenkins.ssc.FortifySSCBuilder;
+import com.fortify.integration.jenkins.ssc.configurable.op.FortifySSCPublishResultsToJenkinsOp;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import hudson.Extension;
+import hudson.XmlFile;
 import hudson.model.Action;
+import hudson.model.Item;
 import hudson.model.Job;
+import hudson.model.Project;
 import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
 import jenkins.model.TransientActionFactory;
 
 @SuppressWarnings("rawtypes")
 @Extension
 /**
  * We don't use {@link TransientProjectActionFactory} because it appears to be cached and requires Jenkins to restart.
+ * Instead, as this factory is invoked on every job page render, we cache the number of actions to be created per job,
+ * keyed by the last completed build number. The cache doesn't hold any references to jobs, builds or build actions;
+ * the created {@link FortifySSCPageAction} instances resolve the publish action from the last completed build when
+ * needed. Cache entries are invalidated if the job configuration is saved, and removed if the job is deleted or moved.
  */
 public class FortifySSCActionFactory extends TransientActionFactory<Job> {
+  private static final Cache<Job, CachedActionCount> CACHE = CacheBuilder.newBuilder().weakKeys().maximumSize(10000).build();
+
   @Override
   public Class<Job> type() {
     return Job.class;
@@ -41,19 +59,88 @@ public class FortifySSCActionFactory extends TransientActionFactory<Job> {
 
   @Override
   public Collection<? extends Action> createFor(Job job) {
-    List<FortifySSCPageAction> actions = new LinkedList<>();
-
     // don't fetch builds that haven't finished yet
     Run<?, ?> lastBuild = job.getLastCompletedBuild();
+    int lastBuildNumber = lastBuild == null ? -1 : lastBuild.getNumber();
+    CachedActionCount cached = CACHE.getIfPresent(job);
+    if (cached == null || cached.lastBuildNumber != lastBuildNumber) {
+      cached = new CachedActionCount(lastBuildNumber, getActionCount(job, lastBuild));
+      CACHE.put(job, cached);
+    }
+    if (cached.count == 0) {
+      return Collections.emptyList();
+    }
+    List<FortifySSCPageAction> actions = new ArrayList<>(cached.count);
+    for (int i = 0; i < cached.count; i++) {
+      actions.add(new FortifySSCPageAction(job, i));
+    }
+    return actions;
+  }
+
+  private static int getActionCount(Job<?, ?> job, Run<?, ?> lastBuild) {
+    if (lastBuild == null || !hasPublishOp(job)) {
+      return 0;
+    }
+    return lastBuild.getActions(FortifySSCPublishAction.class).size();
+  }
 
-    if (lastBuild != null) { 
-      // TODO Don't include the action if the job no longer has the FortifySSCJenkinsBuilder/PublishResultsToJenkins step,
-      //      even if the last build had this step enabled
-      for (FortifySSCPublishAction a : lastBuild.getActions(FortifySSCPublishAction.class)) {
-        actions.add(new FortifySSCPageAction(a));
+  /**
+   * Check whether the given job is still configured to publish results to Jenkins. For job types
+   * that don't expose their build steps, like pipeline jobs, we assume that this is the case.
+   */
+  private static boolean hasPublishOp(Job<?, ?> job) {
+    if (!(job instanceof Project)) {
+      return true;
+    }
+    for (FortifySSCBuilder builder : ((Project<?, ?>) job).getBuildersList().getAll(FortifySSCBuilder.class)) {
+      if (!builder.getOps().getAll(FortifySSCPublishResultsToJenkinsOp.class).isEmpty()) {
+        return true;
       }
     }
+    return false;
+  }
 
-    return actions;
+  private static final class CachedActionCount {
+    private final int lastBuildNumber;
+    private final int count;
+
+    private CachedActionCount(int lastBuildNumber, int count) {
+      this.lastBuildNumber = lastBuildNumber;
+      this.count = count;
+    }
+  }
+
+  /**
+   * Invalidate cached actions if a job configuration is saved, as the job may have been (re-)configured
+   * to (no longer) publish results to Jenkins.
+   */
+  @Extension
+  public static final class JobSaveableListener extends SaveableListener {
+    @Override
+    public void onChange(Saveable o, XmlFile file) {
+      if (o instanceof Job) {
+        CACHE.invalidate(o);
+      }
+    }
+  }
+
+  /**
+   * Remove cached action counts for deleted or moved jobs.
+   */
+  @Extension
+  public static final class JobItemListener extends ItemListener {
+    @Override
+    public void onDeleted(Item item) {
+      if (item instanceof Job) {
+        CACHE.invalidate(item);
+      }
+    }
+
+    @Override
+    public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+      if (item instanceof Job) {
+        CACHE.invalidate(item);
+      }
+    }
   }
 }
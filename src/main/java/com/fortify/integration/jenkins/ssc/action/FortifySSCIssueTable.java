@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.action;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import com.fortify.integration.jenkins.ssc.storage.FortifySSCIssueSnapshot;
+import com.fortify.integration.jenkins.ssc.storage.FortifySSCIssueSnapshot.Column;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import hudson.model.Run;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * <p>Serves pages of the issue snapshot stored for a build, sorted and filtered as
+ * requested, for rendering the issue table with virtual scrolling. Only the requested
+ * page of issues is decoded from the cached snapshot; the sorted and filtered 
+ * row index for a given request is cached, so scrolling through a large table only 
+ * costs a single pass over the snapshot.</p>
+ * 
+ * <p>Responses are identified by an ETag, computed as a digest over the snapshot stamp
+ * and the request parameters. Snapshots of completed builds never change, so responses 
+ * for completed builds are marked as immutable if the request URL identifies the build;
+ * otherwise browsers need to revalidate, as the same URL may refer to a different build
+ * later on.</p>
+ * 
+ * @author Ruud Senden
+ *
+ */
+final class FortifySSCIssueTable {
+	static final int DEFAULT_PAGE_SIZE = 100;
+	static final int MAX_PAGE_SIZE = 500;
+	private static final String SORT_LINE = "line";
+	private static final String SORT_SEVERITY = "severity";
+	private static final long MAX_SNAPSHOT_BYTES = 64*1024*1024;
+	private static final Cache<String, FortifySSCIssueSnapshot> SNAPSHOTS = CacheBuilder.newBuilder()
+			.maximumWeight(MAX_SNAPSHOT_BYTES).weigher(new Weigher<String, FortifySSCIssueSnapshot>() {
+				@Override
+				public int weigh(String key, FortifySSCIssueSnapshot value) {
+					return value.getByteSize();
+				}
+			}).expireAfterAccess(30, TimeUnit.MINUTES).build();
+	private static final Cache<String, int[]> ROW_INDEXES = CacheBuilder.newBuilder()
+			.maximumSize(50).expireAfterAccess(30, TimeUnit.MINUTES).build();
+	
+	private FortifySSCIssueTable() {}
+	
+	/**
+	 * Serve a single page of issues for the given run. Supported request parameters:
+	 * <ul>
+	 *  <li>start, limit: First row and number of rows to return</li>
+	 *  <li>sort, desc: {@link Column#getKey()}, 'line' or 'severity', and whether to sort descending</li>
+	 *  <li>{@link Column#getKey()}: Only include issues with the given value for that column</li>
+	 * </ul>
+	 * @param run Build for which to serve issues
+	 * @param buildScopedUrl Whether the request URL identifies the given build
+	 */
+	static void serve(Run<?, ?> run, boolean buildScopedUrl, StaplerRequest req, StaplerResponse rsp) throws IOException {
+		final File file = run==null ? null : FortifySSCIssueSnapshot.getFile(run);
+		if ( file == null || !file.isFile() ) {
+			rsp.sendError(HttpServletResponse.SC_NOT_FOUND, "No issue snapshot available");
+			return;
+		}
+		String sort = StringUtils.defaultString(req.getParameter("sort"));
+		boolean desc = Boolean.parseBoolean(req.getParameter("desc"));
+		Map<Column, String> filters = new TreeMap<>();
+		for ( Column column : Column.values() ) {
+			String value = req.getParameter(column.getKey());
+			if ( value != null ) { filters.put(column, value); }
+		}
+		int start = Math.max(0, getInt(req, "start", 0));
+		int limit = Math.min(MAX_PAGE_SIZE, Math.max(1, getInt(req, "limit", DEFAULT_PAGE_SIZE)));
+		
+		// Publishing results may be retried, rewriting the snapshot file within the resolution of the
+		// file modification time, so we identify the snapshot by the stamp stored in the snapshot file
+		long stamp = FortifySSCIssueSnapshot.readStamp(file);
+		String snapshotKey = file.getPath()+":"+stamp;
+		String indexKey = snapshotKey+":"+sort+":"+desc+":"+filters;
+		String etag = "\""+sha256Hex(indexKey+":"+start+":"+limit)+"\"";
+		rsp.setHeader("ETag", etag);
+		if ( !buildScopedUrl || run.isBuilding() ) {
+			rsp.setHeader("Cache-Control", "private, no-cache");
+		} else {
+			rsp.setHeader("Cache-Control", "private, max-age=31536000, immutable");
+		}
+		if ( etag.equals(req.getHeader("If-None-Match")) ) {
+			rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		
+		FortifySSCIssueSnapshot snapshot = getSnapshot(snapshotKey, file);
+		int[] rows = getRowIndex(indexKey, snapshot, sort, desc, filters);
+		JSONArray page = new JSONArray();
+		for ( int i = start ; i < Math.min(rows.length, start+limit) ; i++ ) {
+			page.add(toJSON(snapshot, rows[i]));
+		}
+		JSONObject result = new JSONObject();
+		result.put("total", rows.length);
+		result.put("start", start);
+		result.put("rows", page);
+		
+		rsp.setContentType("application/json;charset=UTF-8");
+		try ( OutputStream out = rsp.getCompressedOutputStream(req) ) {
+			out.write(result.toString().getBytes(StandardCharsets.UTF_8));
+		}
+	}
+	
+	private static String sha256Hex(String value) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder(digest.length*2);
+			for ( byte b : digest ) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch ( NoSuchAlgorithmException e ) {
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+	}
+	
+	private static JSONObject toJSON(FortifySSCIssueSnapshot snapshot, int row) {
+		JSONObject result = new JSONObject();
+		result.put("id", snapshot.getId(row));
+		result.put("issueInstanceId", snapshot.getIssueInstanceId(row));
+		for ( Column column : Column.values() ) {
+			result.put(column.getKey(), snapshot.getString(column, row));
+		}
+		result.put(SORT_LINE, snapshot.getLineNumber(row));
+		result.put(SORT_SEVERITY, snapshot.getSeverity(row));
+		return result;
+	}
+	
+	private static FortifySSCIssueSnapshot getSnapshot(String snapshotKey, final File file) throws IOException {
+		try {
+			return SNAPSHOTS.get(snapshotKey, new Callable<FortifySSCIssueSnapshot>() {
+				@Override
+				public FortifySSCIssueSnapshot call() throws IOException {
+					return FortifySSCIssueSnapshot.open(file);
+				}
+			});
+		} catch ( ExecutionException e ) {
+			throw e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause());
+		}
+	}
+	
+	private static int[] getRowIndex(String indexKey, final FortifySSCIssueSnapshot snapshot, final String sort, final boolean desc, final Map<Column, String> filters) throws IOException {
+		try {
+			return ROW_INDEXES.get(indexKey, new Callable<int[]>() {
+				@Override
+				public int[] call() {
+					int[] rows = sort(snapshot, filter(snapshot, filters), sort);
+					if ( desc ) { reverse(rows); }
+					return rows;
+				}
+			});
+		} catch ( ExecutionException e ) {
+			throw new IOException(e.getCause());
+		}
+	}
+	
+	/**
+	 * @return Rows matching all given filters, in snapshot order
+	 */
+	private static int[] filter(FortifySSCIssueSnapshot snapshot, Map<Column, String> filters) {
+		Column[] columns = filters.keySet().toArray(new Column[filters.size()]);
+		int[] codes = new int[columns.length];
+		for ( int f = 0 ; f < columns.length ; f++ ) {
+			codes[f] = Arrays.asList(snapshot.getDictionary(columns[f])).indexOf(filters.get(columns[f]));
+			if ( codes[f] < 0 ) { return new int[0]; }
+		}
+		int[] result = new int[snapshot.size()];
+		int count = 0;
+		rows: for ( int row = 0 ; row < snapshot.size() ; row++ ) {
+			for ( int f = 0 ; f < columns.length ; f++ ) {
+				if ( snapshot.getCode(columns[f], row) != codes[f] ) { continue rows; }
+			}
+			result[count++] = row;
+		}
+		return count == result.length ? result : Arrays.copyOf(result, count);
+	}
+	
+	/**
+	 * Sort the given rows without boxing: dictionary-encoded columns are sorted by 
+	 * counting sort on the rank of each dictionary value, numeric columns by sorting
+	 * (value, row) pairs packed into a single long.
+	 */
+	private static int[] sort(FortifySSCIssueSnapshot snapshot, int[] rows, String sort) {
+		for ( Column column : Column.values() ) {
+			if ( column.getKey().equals(sort) ) { return sortByDictionary(snapshot, rows, column); }
+		}
+		if ( SORT_LINE.equals(sort) || SORT_SEVERITY.equals(sort) ) {
+			long[] packed = new long[rows.length];
+			for ( int i = 0 ; i < rows.length ; i++ ) {
+				int key = SORT_LINE.equals(sort) ? snapshot.getLineNumber(rows[i]) : toSortableInt(snapshot.getSeverity(rows[i]));
+				packed[i] = ((long)key << 32) | (rows[i] & 0xFFFFFFFFL);
+			}
+			Arrays.sort(packed);
+			int[] result = new int[rows.length];
+			for ( int i = 0 ; i < packed.length ; i++ ) { result[i] = (int)packed[i]; }
+			return result;
+		}
+		return rows;
+	}
+	
+	private static int[] sortByDictionary(FortifySSCIssueSnapshot snapshot, int[] rows, Column column) {
+		final String[] dictionary = snapshot.getDictionary(column);
+		Integer[] codesByValue = new Integer[dictionary.length];
+		for ( int i = 0 ; i < codesByValue.length ; i++ ) { codesByValue[i] = i; }
+		Arrays.sort(codesByValue, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return String.CASE_INSENSITIVE_ORDER.compare(dictionary[o1], dictionary[o2]);
+			}
+		});
+		int[] ranks = new int[dictionary.length];
+		for ( int rank = 0 ; rank < codesByValue.length ; rank++ ) { ranks[codesByValue[rank]] = rank; }
+		int[] rowRanks = new int[rows.length];
+		int[] bucketStarts = new int[dictionary.length+1];
+		for ( int i = 0 ; i < rows.length ; i++ ) {
+			rowRanks[i] = ranks[snapshot.getCode(column, rows[i])];
+			bucketStarts[rowRanks[i]+1]++;
+		}
+		for ( int rank = 0 ; rank < dictionary.length ; rank++ ) { bucketStarts[rank+1] += bucketStarts[rank]; }
+		int[] result = new int[rows.length];
+		for ( int i = 0 ; i < rows.length ; i++ ) { result[bucketStarts[rowRanks[i]]++] = rows[i]; }
+		return result;
+	}
+	
+	/** Convert the given float to an int with the same ordering */
+	private static int toSortableInt(float value) {
+		int bits = Float.floatToIntBits(value);
+		return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+	}
+	
+	private static void reverse(int[] rows) {
+		for ( int i = 0, j = rows.length-1 ; i < j ; i++, j-- ) {
+			int tmp = rows[i]; rows[i] = rows[j]; rows[j] = tmp;
+		}
+	}
+	
+	private static int getInt(StaplerRequest req, String name, int defaultValue) {
+		try {
+			return Integer.parseInt(req.getParameter(name));
+		} catch ( NumberFormatException e ) {
+			return defaultValue;
+		}
+	}
+}
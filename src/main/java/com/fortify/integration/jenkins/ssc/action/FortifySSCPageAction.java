@@ -24,20 +24,100 @@
  ******************************************************************************/
 package com.fortify.integration.jenkins.ssc.action;
 
+import java.io.IOException;
+import java.util.List;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import com.fortify.integration.jenkins.ssc.storage.FortifySSCIssueTrend;
+
 import hudson.Plugin;
 import hudson.PluginWrapper;
 import hudson.model.Action;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Run;
 import jenkins.model.Jenkins;
 
+/**
+ * <p>Job-level action for showing the results published for the last completed build. 
+ * Instances of this class only reference the job; the {@link FortifySSCPublishAction} is
+ * resolved from the last completed build whenever it is needed, so this action never keeps
+ * a (possibly outdated) {@link Run} instance in memory.</p>
+ * 
+ * @author Ruud Senden
+ *
+ */
 public final class FortifySSCPageAction implements Action {
-	private final FortifySSCPublishAction action;
+	private final Job<?, ?> job;
+	private final int actionIndex;
 
-	public FortifySSCPageAction(FortifySSCPublishAction action) {
-		this.action = action;
+	/**
+	 * @param job Job for which to show published results
+	 * @param actionIndex Index of the {@link FortifySSCPublishAction} in the list of 
+	 *        publish actions attached to the last completed build
+	 */
+	public FortifySSCPageAction(Job<?, ?> job, int actionIndex) {
+		this.job = job;
+		this.actionIndex = actionIndex;
+	}
+	
+	public Job<?, ?> getJob() {
+		return job;
 	}
 
+	/**
+	 * @return {@link FortifySSCPublishAction} attached to the last completed build, or null if not available
+	 */
 	public FortifySSCPublishAction getAction() {
-		return action;
+		Run<?, ?> lastBuild = job.getLastCompletedBuild();
+		List<FortifySSCPublishAction> actions = lastBuild==null ? null : lastBuild.getActions(FortifySSCPublishAction.class);
+		return actions==null || actionIndex >= actions.size() ? null : actions.get(actionIndex);
+	}
+	
+	/**
+	 * @return Issue trend entries for the job, read from the job-level trend file without loading any builds
+	 */
+	public List<FortifySSCIssueTrend.Entry> getTrend() {
+		return FortifySSCIssueTrend.read(job);
+	}
+
+	/**
+	 * Serve a single page of issues from the issue snapshot of the build identified by
+	 * the 'build' request parameter, or of the published build if not specified; see 
+	 * {@link FortifySSCIssueTable#serve(Run, boolean, StaplerRequest, StaplerResponse)}
+	 * for other supported request parameters. As this action lives at the job level, 
+	 * responses may only be cached indefinitely if the URL identifies the build.
+	 */
+	public void doIssues(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		job.checkPermission(Item.READ);
+		String buildNumber = req.getParameter("build");
+		if ( buildNumber == null ) {
+			FortifySSCPublishAction action = getAction();
+			FortifySSCIssueTable.serve(action==null ? null : action.getRun(), false, req, rsp);
+		} else {
+			Run<?, ?> run = null;
+			try {
+				run = job.getBuildByNumber(Integer.parseInt(buildNumber));
+			} catch ( NumberFormatException e ) {
+				// Handled as unknown build below
+			}
+			FortifySSCIssueTable.serve(run, true, req, rsp);
+		}
+	}
+	
+	/**
+	 * @return Number of the build for which issues are shown
+	 */
+	public int getBuildNumber() {
+		FortifySSCPublishAction action = getAction();
+		Run<?, ?> run = action==null ? null : action.getRun();
+		return run==null ? -1 : run.getNumber();
+	}
+	
+	public int getPageSize() {
+		return FortifySSCIssueTable.DEFAULT_PAGE_SIZE;
 	}
 
 	@Override
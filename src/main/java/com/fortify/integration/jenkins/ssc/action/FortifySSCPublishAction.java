@@ -24,16 +24,68 @@
  ******************************************************************************/
 package com.fortify.integration.jenkins.ssc.action;
 
+import com.fortify.integration.jenkins.ssc.issue.FortifySSCIssueSummary;
+
 import hudson.model.InvisibleAction;
 import hudson.model.Job;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
 
-public final class FortifySSCPublishAction extends InvisibleAction {
-	private final Job<?, ?> job;
-	public FortifySSCPublishAction(Job<?, ?> job) {
-		this.job = job;
+/**
+ * <p>Build action recording that results were published to Jenkins for a given build.
+ * Only the application version id and the (small) issue summary are persisted with the 
+ * build; the job and run are derived from the run to which this action is attached.
+ * Older plugin versions also persisted the job; Jenkins ignores this obsolete field
+ * when loading builds published by these versions.</p>
+ * 
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCPublishAction extends InvisibleAction implements RunAction2 {
+	private final String applicationVersionId;
+	private final FortifySSCIssueSummary summary;
+	private transient Run<?, ?> run;
+	
+	public FortifySSCPublishAction(String applicationVersionId, FortifySSCIssueSummary summary) {
+		this.applicationVersionId = applicationVersionId;
+		this.summary = summary;
 	}
 	
+	/**
+	 * @return Job that owns the run to which this action is attached
+	 */
 	public Job<?, ?> getJob() {
-		return job;
+		return run==null ? null : run.getParent();
+	}
+	
+	/**
+	 * @return Application version id to which results were published, or null for builds published by older plugin versions
+	 */
+	public String getApplicationVersionId() {
+		return applicationVersionId;
+	}
+	
+	/**
+	 * @return Run to which this action is attached
+	 */
+	public Run<?, ?> getRun() {
+		return run;
+	}
+	
+	@Override
+	public void onAttached(Run<?, ?> run) {
+		this.run = run;
+	}
+	
+	@Override
+	public void onLoad(Run<?, ?> run) {
+		this.run = run;
+	}
+	
+	/**
+	 * @return Issue summary captured for this build, or null for builds published by older plugin versions
+	 */
+	public FortifySSCIssueSummary getSummary() {
+		return summary;
 	}
 }
\ No newline at end of file
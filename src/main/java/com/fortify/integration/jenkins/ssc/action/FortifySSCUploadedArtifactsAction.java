@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.action;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+/**
+ * This {@link InvisibleAction} records the artifacts that were uploaded to SSC
+ * during a run, allowing the sscWaitForProcessing pipeline step to wait for 
+ * processing completion after the upload operation has released its executor.
+ * 
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCUploadedArtifactsAction extends InvisibleAction {
+	private final List<UploadedArtifact> uploadedArtifacts = new ArrayList<>();
+	
+	/**
+	 * Record the given uploaded artifact on the given run
+	 * @param run Current run
+	 * @param uploadedArtifact Artifact that was uploaded during the current run
+	 */
+	public static void record(Run<?, ?> run, UploadedArtifact uploadedArtifact) {
+		synchronized (run) {
+			FortifySSCUploadedArtifactsAction action = run.getAction(FortifySSCUploadedArtifactsAction.class);
+			if ( action == null ) {
+				action = new FortifySSCUploadedArtifactsAction();
+				run.addAction(action);
+			}
+			action.add(uploadedArtifact);
+		}
+	}
+	
+	private synchronized void add(UploadedArtifact uploadedArtifact) {
+		uploadedArtifacts.add(uploadedArtifact);
+	}
+	
+	public synchronized List<UploadedArtifact> getUploadedArtifacts() {
+		return Collections.unmodifiableList(new ArrayList<>(uploadedArtifacts));
+	}
+	
+	public static final class UploadedArtifact implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final String applicationVersionId;
+		private final String artifactId;
+		private final String fileName;
+		private final boolean autoApprove;
+		
+		public UploadedArtifact(String applicationVersionId, String artifactId, String fileName, boolean autoApprove) {
+			this.applicationVersionId = applicationVersionId;
+			this.artifactId = artifactId;
+			this.fileName = fileName;
+			this.autoApprove = autoApprove;
+		}
+
+		public String getApplicationVersionId() {
+			return applicationVersionId;
+		}
+
+		public String getArtifactId() {
+			return artifactId;
+		}
+
+		public String getFileName() {
+			return fileName;
+		}
+
+		public boolean isAutoApprove() {
+			return autoApprove;
+		}
+	}
+}
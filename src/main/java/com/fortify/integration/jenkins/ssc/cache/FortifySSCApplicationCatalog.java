@@ -0,0 +1,395 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.client.WebTarget;
+
+import com.fortify.client.ssc.connection.SSCAuthenticatingRestConnection;
+import com.fortify.integration.jenkins.ssc.FortifySSCGlobalConfiguration;
+import com.fortify.util.rest.json.JSONList;
+import com.fortify.util.rest.json.JSONMap;
+
+import jenkins.util.Timer;
+
+/**
+ * <p>Controller-wide, in-memory catalog of all SSC applications and their versions, used
+ * for auto-completion without accessing SSC.
+ * The catalog is stored as an immutable index of sorted arrays, published through a single
+ * atomic reference; lookups and prefix searches use binary search. Refreshes query SSC without
+ * holding any locks, and then swap in the new index, so neither lookups nor updates through
+ * {@link #put(String, String, String)} and {@link #remove(String, String)} ever wait for SSC.</p>
+ * 
+ * <p>The catalog is refreshed periodically by {@link FortifySSCApplicationCatalogRefresher}.
+ * SSC doesn't provide modification timestamps for application versions, so incremental 
+ * refreshes only retrieve application versions with an id higher than any id already in the 
+ * catalog. To pick up renamed and deleted application versions, the catalog is fully rebuilt
+ * at a lower frequency. As such, the catalog may contain application versions that no longer
+ * exist, and must not be used to decide whether an application version exists or to resolve
+ * application version id's. Callers should report any application versions found or found to 
+ * be missing on SSC through {@link #put(String, String, String)} and {@link #remove(String, String)}.</p>
+ * 
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCApplicationCatalog {
+	private static final Logger LOG = Logger.getLogger(FortifySSCApplicationCatalog.class.getName());
+	private static final long FULL_REFRESH_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(6);
+	private static final int PAGE_SIZE = 1000;
+	/** Case-insensitive order, with case-sensitive tie breaking to keep names that only differ in case */
+	private static final Comparator<String> CASE_INSENSITIVE_THEN_NATURAL = new Comparator<String>() {
+		@Override
+		public int compare(String o1, String o2) {
+			int result = String.CASE_INSENSITIVE_ORDER.compare(o1, o2);
+			return result != 0 ? result : o1.compareTo(o2);
+		}
+	};
+	private final AtomicBoolean refreshing = new AtomicBoolean(false);
+	private final AtomicBoolean initialRefreshRequested = new AtomicBoolean(false);
+	private final AtomicReference<Index> index = new AtomicReference<>();
+	private volatile long lastFullRefreshMillis;
+	
+	/**
+	 * Refresh the catalog using the given connection; this performs a full rebuild if the
+	 * catalog hasn't been built yet, if the SSC URL has changed, or if the last full rebuild
+	 * was performed more than {@link #FULL_REFRESH_INTERVAL_MILLIS} ago. Otherwise, only new
+	 * application versions are added to the catalog. If another refresh is already running,
+	 * this method returns immediately.
+	 * @param conn {@link SSCAuthenticatingRestConnection} used to query SSC
+	 */
+	public void refresh(SSCAuthenticatingRestConnection conn) {
+		if ( !refreshing.compareAndSet(false, true) ) { return; }
+		try {
+			Index current = index.get();
+			String baseUrl = conn.getBaseUrl();
+			if ( current == null || !current.baseUrl.equals(baseUrl) || System.currentTimeMillis()-lastFullRefreshMillis > FULL_REFRESH_INTERVAL_MILLIS ) {
+				long start = System.currentTimeMillis();
+				// Any updates made while rebuilding are discarded, but will be picked up by the next refresh
+				index.set(Index.EMPTY.withBaseUrl(baseUrl).merge(queryApplicationVersions(conn, -1)));
+				lastFullRefreshMillis = start;
+			} else {
+				List<Entry> entries = queryApplicationVersions(conn, current.maxVersionId);
+				while ( !entries.isEmpty() ) {
+					Index latest = index.get();
+					if ( index.compareAndSet(latest, latest.merge(entries)) ) { break; }
+				}
+			}
+		} finally {
+			refreshing.set(false);
+		}
+	}
+	
+	/**
+	 * @return true if the catalog has been built, false otherwise
+	 */
+	public boolean isAvailable() {
+		return getIndex() != null;
+	}
+	
+	/**
+	 * Find application names starting with the given prefix, ignoring case
+	 * @param prefix Application name prefix
+	 * @param maxResults Maximum number of application names to return
+	 * @return Matching application names in alphabetical order, or null if the catalog is not available
+	 */
+	public List<String> findApplicationNames(String prefix, int maxResults) {
+		Index current = getIndex();
+		if ( current == null ) { return null; }
+		List<String> result = new ArrayList<>();
+		for ( int i = lowerBound(current.applicationNames, prefix) ; i < current.applicationNames.length && result.size() < maxResults ; i++ ) {
+			String name = current.applicationNames[i];
+			if ( !name.regionMatches(true, 0, prefix, 0, prefix.length()) ) { break; }
+			result.add(name);
+		}
+		return result;
+	}
+	
+	/**
+	 * @return Index of the first name in the given sorted array that is not less than the given name, ignoring case
+	 */
+	private static int lowerBound(String[] sortedNames, String name) {
+		int low = 0, high = sortedNames.length;
+		while ( low < high ) {
+			int mid = (low+high) >>> 1;
+			if ( String.CASE_INSENSITIVE_ORDER.compare(sortedNames[mid], name) < 0 ) { low = mid+1; } else { high = mid; }
+		}
+		return low;
+	}
+	
+	/**
+	 * @param applicationName Application name
+	 * @return Version names for the given application in alphabetical order, or null if the 
+	 *         catalog is not available or doesn't contain the given application
+	 */
+	public List<String> getVersionNames(String applicationName) {
+		Index current = getIndex();
+		int a = current==null ? -1 : current.indexOfApplication(applicationName);
+		return a < 0 ? null : Collections.unmodifiableList(Arrays.asList(current.versionNames[a]));
+	}
+	
+	/**
+	 * Add the given application version to the catalog, for example after it was found
+	 * on SSC after a catalog miss, or after it has been created. This is ignored if the 
+	 * catalog is not available, or already contains the given application version id.
+	 */
+	public void put(String applicationName, String versionName, String applicationVersionId) {
+		if ( applicationName == null || versionName == null || applicationVersionId == null ) { return; }
+		while ( true ) {
+			Index current = index.get();
+			if ( current == null || applicationVersionId.equals(current.getVersionId(applicationName, versionName)) ) { return; }
+			if ( index.compareAndSet(current, current.put(applicationName, versionName, applicationVersionId)) ) { return; }
+		}
+	}
+	
+	/**
+	 * Remove the given application version from the catalog, for example because SSC
+	 * returned HTTP 404 for the cached application version id. This is ignored if the
+	 * catalog is not available, or doesn't contain the given application version.
+	 */
+	public void remove(String applicationName, String versionName) {
+		while ( true ) {
+			Index current = index.get();
+			if ( current == null || current.getVersionId(applicationName, versionName) == null ) { return; }
+			if ( index.compareAndSet(current, current.remove(applicationName, versionName)) ) { return; }
+		}
+	}
+	
+	/**
+	 * Get the current index; if the catalog hasn't been built yet, an asynchronous
+	 * refresh is requested such that subsequent lookups can be answered from memory.
+	 */
+	private Index getIndex() {
+		Index result = index.get();
+		if ( result == null && initialRefreshRequested.compareAndSet(false, true) ) {
+			Timer.get().submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						SSCAuthenticatingRestConnection conn = FortifySSCGlobalConfiguration.get().conn();
+						if ( conn != null ) { refresh(conn); }
+					} catch ( RuntimeException e ) {
+						LOG.log(Level.WARNING, "Error building SSC application catalog", e);
+					} finally {
+						initialRefreshRequested.set(false);
+					}
+				}
+			});
+		}
+		return result;
+	}
+	
+	/**
+	 * Retrieve all application versions with an id higher than the given id, in descending id order
+	 */
+	private static List<Entry> queryApplicationVersions(SSCAuthenticatingRestConnection conn, long minVersionIdExclusive) {
+		List<Entry> result = new ArrayList<>();
+		WebTarget target = conn.getBaseResource().path("api/v1/projectVersions")
+				.queryParam("fields", "id,name,project").queryParam("orderby", "-id").queryParam("limit", String.valueOf(PAGE_SIZE));
+		for ( int start = 0 ; ; start += PAGE_SIZE ) {
+			JSONList data = conn.executeRequest(HttpMethod.GET, target.queryParam("start", String.valueOf(start)), JSONMap.class, false).get("data", JSONList.class);
+			if ( data == null || data.isEmpty() ) { return result; }
+			for ( JSONMap version : data.asValueType(JSONMap.class) ) {
+				String id = version.get("id", String.class);
+				if ( Long.parseLong(id) <= minVersionIdExclusive ) { return result; }
+				JSONMap project = version.get("project", JSONMap.class);
+				if ( project != null ) {
+					result.add(new Entry(project.get("name", String.class), version.get("name", String.class), id));
+				}
+			}
+			if ( data.size() < PAGE_SIZE ) { return result; }
+		}
+	}
+	
+	private static final class Entry {
+		private final String applicationName;
+		private final String versionName;
+		private final String id;
+		
+		public Entry(String applicationName, String versionName, String id) {
+			this.applicationName = applicationName;
+			this.versionName = versionName;
+			this.id = id;
+		}
+	}
+	
+	/**
+	 * Immutable catalog index; application names and the version names for each application 
+	 * are sorted case-insensitively, with version id's stored in an array parallel to the 
+	 * version names.
+	 */
+	private static final class Index {
+		private static final Index EMPTY = new Index("", new String[0], new String[0][], new String[0][], -1);
+		private final String baseUrl;
+		private final String[] applicationNames;
+		private final String[][] versionNames;
+		private final String[][] versionIds;
+		private final long maxVersionId;
+		
+		private Index(String baseUrl, String[] applicationNames, String[][] versionNames, String[][] versionIds, long maxVersionId) {
+			this.baseUrl = baseUrl;
+			this.applicationNames = applicationNames;
+			this.versionNames = versionNames;
+			this.versionIds = versionIds;
+			this.maxVersionId = maxVersionId;
+		}
+		
+		private Index withBaseUrl(String baseUrl) {
+			return new Index(baseUrl, applicationNames, versionNames, versionIds, maxVersionId);
+		}
+		
+		private int indexOfApplication(String applicationName) {
+			return indexOf(applicationNames, applicationName);
+		}
+		
+		/**
+		 * @return Version id for the given application and version name, or null if not available
+		 */
+		private String getVersionId(String applicationName, String versionName) {
+			int a = indexOfApplication(applicationName);
+			int v = a < 0 ? -1 : indexOf(versionNames[a], versionName);
+			return v < 0 ? null : versionIds[a][v];
+		}
+		
+		/** Exact (case-sensitive) lookup in an array sorted case-insensitively */
+		private static int indexOf(String[] sortedNames, String name) {
+			if ( name == null ) { return -1; }
+			for ( int i = lowerBound(sortedNames, name) ; i < sortedNames.length && sortedNames[i].equalsIgnoreCase(name) ; i++ ) {
+				if ( sortedNames[i].equals(name) ) { return i; }
+			}
+			return -1;
+		}
+		
+		private Index merge(List<Entry> entries) {
+			Map<String, Map<String, String>> map = toMap();
+			long maxId = maxVersionId;
+			for ( Entry entry : entries ) {
+				Map<String, String> versions = map.get(entry.applicationName);
+				if ( versions == null ) {
+					versions = new TreeMap<>(CASE_INSENSITIVE_THEN_NATURAL);
+					map.put(entry.applicationName, versions);
+				}
+				versions.put(entry.versionName, entry.id);
+				maxId = Math.max(maxId, Long.parseLong(entry.id));
+			}
+			return fromMap(map, maxId);
+		}
+		
+		/**
+		 * Add or replace a single application version; unlike {@link #merge(List)}, this only 
+		 * copies the arrays that are affected by the update.
+		 */
+		private Index put(String applicationName, String versionName, String versionId) {
+			long maxId = Math.max(maxVersionId, Long.parseLong(versionId));
+			int a = Arrays.binarySearch(applicationNames, applicationName, CASE_INSENSITIVE_THEN_NATURAL);
+			if ( a < 0 ) {
+				a = -a-1;
+				return new Index(baseUrl, insert(applicationNames, a, applicationName), insert(versionNames, a, new String[] {versionName}), 
+						insert(versionIds, a, new String[] {versionId}), maxId);
+			}
+			String[][] newVersionNames = versionNames.clone();
+			String[][] newVersionIds = versionIds.clone();
+			int v = Arrays.binarySearch(versionNames[a], versionName, CASE_INSENSITIVE_THEN_NATURAL);
+			if ( v < 0 ) {
+				v = -v-1;
+				newVersionNames[a] = insert(versionNames[a], v, versionName);
+				newVersionIds[a] = insert(versionIds[a], v, versionId);
+			} else {
+				newVersionIds[a] = versionIds[a].clone();
+				newVersionIds[a][v] = versionId;
+			}
+			return new Index(baseUrl, applicationNames, newVersionNames, newVersionIds, maxId);
+		}
+		
+		/**
+		 * Remove a single application version, removing the application if it doesn't have
+		 * any other versions; this only copies the arrays that are affected by the update.
+		 */
+		private Index remove(String applicationName, String versionName) {
+			int a = indexOfApplication(applicationName);
+			int v = a < 0 ? -1 : indexOf(versionNames[a], versionName);
+			if ( v < 0 ) { return this; }
+			if ( versionNames[a].length == 1 ) {
+				return new Index(baseUrl, delete(applicationNames, a), delete(versionNames, a), delete(versionIds, a), maxVersionId);
+			}
+			String[][] newVersionNames = versionNames.clone();
+			String[][] newVersionIds = versionIds.clone();
+			newVersionNames[a] = delete(versionNames[a], v);
+			newVersionIds[a] = delete(versionIds[a], v);
+			return new Index(baseUrl, applicationNames, newVersionNames, newVersionIds, maxVersionId);
+		}
+		
+		private static <T> T[] insert(T[] array, int index, T value) {
+			T[] result = Arrays.copyOf(array, array.length+1);
+			System.arraycopy(array, index, result, index+1, array.length-index);
+			result[index] = value;
+			return result;
+		}
+		
+		private static <T> T[] delete(T[] array, int index) {
+			T[] result = Arrays.copyOf(array, array.length-1);
+			System.arraycopy(array, index+1, result, index, array.length-index-1);
+			return result;
+		}
+		
+		private Map<String, Map<String, String>> toMap() {
+			Map<String, Map<String, String>> result = new TreeMap<>(CASE_INSENSITIVE_THEN_NATURAL);
+			for ( int a = 0 ; a < applicationNames.length ; a++ ) {
+				Map<String, String> versions = new TreeMap<>(CASE_INSENSITIVE_THEN_NATURAL);
+				for ( int v = 0 ; v < versionNames[a].length ; v++ ) {
+					versions.put(versionNames[a][v], versionIds[a][v]);
+				}
+				result.put(applicationNames[a], versions);
+			}
+			return result;
+		}
+		
+		private Index fromMap(Map<String, Map<String, String>> map, long maxId) {
+			String[] newApplicationNames = new String[map.size()];
+			String[][] newVersionNames = new String[map.size()][];
+			String[][] newVersionIds = new String[map.size()][];
+			int a = 0;
+			for ( Map.Entry<String, Map<String, String>> application : map.entrySet() ) {
+				newApplicationNames[a] = application.getKey();
+				newVersionNames[a] = application.getValue().keySet().toArray(new String[0]);
+				newVersionIds[a] = application.getValue().values().toArray(new String[0]);
+				a++;
+			}
+			return new Index(baseUrl, newApplicationNames, newVersionNames, newVersionIds, maxId);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.cache;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Controller-wide cache for mapping application and version names to 
+ * SSC application version id's, shared by all builds. Entries expire
+ * after a fixed time-to-live, and the least recently used entries are
+ * evicted if the cache grows beyond its maximum size.
+ * 
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCApplicationVersionIdCache {
+	private static final long MAX_SIZE = 10000;
+	private static final long TIME_TO_LIVE_MINUTES = 30;
+	private final Cache<List<String>, String> cache = CacheBuilder.newBuilder()
+			.maximumSize(MAX_SIZE)
+			.expireAfterWrite(TIME_TO_LIVE_MINUTES, TimeUnit.MINUTES)
+			.build();
+	
+	/**
+	 * @param applicationName Application name
+	 * @param versionName Version name
+	 * @return Cached application version id, or null if not cached
+	 */
+	public String get(String applicationName, String versionName) {
+		return cache.getIfPresent(getKey(applicationName, versionName));
+	}
+	
+	public void put(String applicationName, String versionName, String applicationVersionId) {
+		if ( applicationVersionId != null ) {
+			cache.put(getKey(applicationName, versionName), applicationVersionId);
+		}
+	}
+	
+	/**
+	 * Remove the cached application version id for the given application and
+	 * version name, for example because SSC returned HTTP 404 for this id.
+	 * @param applicationName Application name
+	 * @param versionName Version name
+	 * @return true if an entry was invalidated, false otherwise
+	 */
+	public boolean invalidate(String applicationName, String versionName) {
+		List<String> key = getKey(applicationName, versionName);
+		boolean result = cache.getIfPresent(key) != null;
+		cache.invalidate(key);
+		return result;
+	}
+	
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * Application and version names may contain any character, so instead of concatenating
+	 * them we use a list of both names as cache key, to avoid collisions between for example
+	 * 'a:b' / 'c' and 'a' / 'b:c'.
+	 */
+	private List<String> getKey(String applicationName, String versionName) {
+		return Arrays.asList(applicationName, versionName);
+	}
+}
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.HttpMethod;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.fortify.client.ssc.connection.SSCAuthenticatingRestConnection;
+import com.fortify.integration.jenkins.ssc.FortifySSCGlobalConfiguration;
+import com.fortify.util.rest.json.JSONList;
+import com.fortify.util.rest.json.JSONMap;
+
+import jenkins.util.Timer;
+
+/**
+ * <p>Controller-wide catalog of SSC issue template names, including the name of the
+ * default issue template. Issue templates rarely change, so the catalog is retrieved 
+ * from SSC once, and then served from memory. After the time-to-live has expired, the
+ * current catalog is still returned, while a background task revalidates the catalog 
+ * against SSC (stale-while-revalidate).</p>
+ * 
+ * <p>All loads, including the initial load and the reload after the SSC URL has been 
+ * changed, are performed by a single background task; concurrent callers share that 
+ * task, and wait at most {@value #MAX_WAIT_SECONDS} seconds for it to complete. If 
+ * loading fails, no new attempt is made until the back-off period has passed, so an
+ * unavailable SSC instance doesn't slow down every caller.</p>
+ * 
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCIssueTemplateCatalog {
+	private static final Logger LOG = Logger.getLogger(FortifySSCIssueTemplateCatalog.class.getName());
+	private static final long TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+	private static final long FAILURE_BACK_OFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+	private static final long MAX_WAIT_SECONDS = 10;
+	private final Object lock = new Object();
+	private volatile Snapshot snapshot;
+	// Guarded by lock
+	private CompletableFuture<Snapshot> loading;
+	private String loadingSscUrl;
+	private String failedSscUrl;
+	private long retryAfterMillis;
+	
+	/**
+	 * @return Issue template names, or empty list if SSC is not configured or not available
+	 */
+	public List<String> getIssueTemplateNames() {
+		Snapshot current = getSnapshot();
+		return current==null ? Collections.<String>emptyList() : current.names;
+	}
+	
+	/**
+	 * @return Name of the default issue template, or null if not available
+	 */
+	public String getDefaultIssueTemplateName() {
+		Snapshot current = getSnapshot();
+		return current==null ? null : current.defaultName;
+	}
+	
+	/**
+	 * Get the current snapshot for the configured SSC URL. This compares against the configured 
+	 * SSC URL rather than the connection URL, to avoid creating a connection (and possibly 
+	 * generating an authentication token) on every call.
+	 */
+	private Snapshot getSnapshot() {
+		String sscUrl = FortifySSCGlobalConfiguration.get().getSscUrl();
+		if ( StringUtils.isBlank(sscUrl) ) { return null; }
+		Snapshot current = this.snapshot;
+		if ( current != null && current.sscUrl.equals(sscUrl) ) {
+			if ( current.isExpired() ) { loadAsync(sscUrl); }
+			return current;
+		}
+		return await(loadAsync(sscUrl));
+	}
+	
+	/**
+	 * Start loading the catalog for the given SSC URL in the background, unless a load for
+	 * the same URL is already in progress, or the last load for this URL failed less than
+	 * the back-off period ago.
+	 * @return Future for the (possibly already running) load, or null if backing off
+	 */
+	private CompletableFuture<Snapshot> loadAsync(final String sscUrl) {
+		synchronized (lock) {
+			if ( loading != null && sscUrl.equals(loadingSscUrl) ) { return loading; }
+			if ( sscUrl.equals(failedSscUrl) && System.currentTimeMillis() < retryAfterMillis ) { return null; }
+			final CompletableFuture<Snapshot> future = new CompletableFuture<>();
+			loading = future;
+			loadingSscUrl = sscUrl;
+			Timer.get().submit(new Runnable() {
+				@Override
+				public void run() {
+					Snapshot result = load(sscUrl);
+					synchronized (lock) {
+						if ( loading == future ) {
+							loading = null;
+							loadingSscUrl = null;
+						}
+						if ( result == null ) {
+							failedSscUrl = sscUrl;
+							retryAfterMillis = System.currentTimeMillis()+FAILURE_BACK_OFF_MILLIS;
+						} else if ( sscUrl.equals(failedSscUrl) ) {
+							failedSscUrl = null;
+						}
+					}
+					future.complete(result);
+				}
+			});
+			return future;
+		}
+	}
+	
+	private Snapshot load(String sscUrl) {
+		try {
+			SSCAuthenticatingRestConnection conn = FortifySSCGlobalConfiguration.get().getConnectionManager().getConnection(sscUrl);
+			if ( conn == null ) { return null; }
+			Snapshot result = Snapshot.query(sscUrl, conn);
+			this.snapshot = result;
+			return result;
+		} catch ( RuntimeException e ) {
+			LOG.log(Level.WARNING, "Error retrieving issue templates from SSC", e);
+			return null;
+		}
+	}
+	
+	private static Snapshot await(CompletableFuture<Snapshot> future) {
+		if ( future == null ) { return null; }
+		try {
+			return future.get(MAX_WAIT_SECONDS, TimeUnit.SECONDS);
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch ( ExecutionException | TimeoutException e ) {
+			return null;
+		}
+	}
+	
+	private static final class Snapshot {
+		private final String sscUrl;
+		private final List<String> names;
+		private final String defaultName;
+		private final long expiresAtMillis;
+		
+		private Snapshot(String sscUrl, List<String> names, String defaultName) {
+			this.sscUrl = sscUrl;
+			this.names = names;
+			this.defaultName = defaultName;
+			this.expiresAtMillis = System.currentTimeMillis()+TIME_TO_LIVE_MILLIS;
+		}
+		
+		private boolean isExpired() {
+			return System.currentTimeMillis() > expiresAtMillis;
+		}
+		
+		private static Snapshot query(String sscUrl, SSCAuthenticatingRestConnection conn) {
+			JSONList data = conn.executeRequest(HttpMethod.GET, conn.getBaseResource().path("api/v1/issueTemplates")
+					.queryParam("fields", "name,defaultTemplate").queryParam("limit", "-1"), JSONMap.class, false).get("data", JSONList.class);
+			List<String> names = new ArrayList<>();
+			String defaultName = null;
+			if ( data != null ) {
+				for ( JSONMap issueTemplate : data.asValueType(JSONMap.class) ) {
+					String name = issueTemplate.get("name", String.class);
+					names.add(name);
+					if ( Boolean.TRUE.equals(issueTemplate.get("defaultTemplate", Boolean.class)) ) { defaultName = name; }
+				}
+			}
+			return new Snapshot(sscUrl, Collections.unmodifiableList(names), defaultName);
+		}
+	}
+}
@@ -25,27 +25,37 @@
 package com.fortify.integration.jenkins.ssc.configurable;
 
 import java.io.PrintStream;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.HttpMethod;
 
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
-import com.fortify.client.ssc.api.SSCApplicationAPI;
 import com.fortify.client.ssc.api.SSCApplicationVersionAPI;
 import com.fortify.client.ssc.connection.SSCAuthenticatingRestConnection;
 import com.fortify.integration.jenkins.configurable.AbortWithMessageException;
 import com.fortify.integration.jenkins.configurable.AbstractConfigurable;
 import com.fortify.integration.jenkins.ssc.FortifySSCGlobalConfiguration;
+import com.fortify.integration.jenkins.ssc.cache.FortifySSCApplicationCatalog;
+import com.fortify.integration.jenkins.ssc.cache.FortifySSCApplicationVersionIdCache;
+import com.fortify.integration.jenkins.ssc.json.processor.AddNamesToAutoCompletionCandidates;
 import com.fortify.integration.jenkins.ssc.json.processor.AddNamesToComboBoxModel;
+import com.fortify.util.rest.json.JSONList;
 import com.fortify.util.rest.json.JSONMap;
 
 import hudson.EnvVars;
 import hudson.Extension;
+import hudson.model.AutoCompletionCandidates;
 import hudson.util.ComboBoxModel;
 
 public class FortifySSCApplicationAndVersionName extends AbstractConfigurable {
 	private static final long serialVersionUID = 1L;
+	private static final Logger LOG = Logger.getLogger(FortifySSCApplicationAndVersionName.class.getName());
 	private String applicationName;
 	private String versionName;
 	
@@ -102,15 +112,103 @@ public class FortifySSCApplicationAndVersionName extends AbstractConfigurable {
 		return applicationVersion;
 	}
 	
+	/**
+	 * Check whether the configured application version exists. This method always queries
+	 * SSC, as the {@link FortifySSCApplicationCatalog} may still contain application versions
+	 * that have been deleted on SSC. If the application version exists, its id will be added
+	 * to the {@link FortifySSCApplicationVersionIdCache}; otherwise it is removed from the
+	 * {@link FortifySSCApplicationCatalog}.
+	 * @param log Jenkins console log
+	 * @param env Jenkins {@link EnvVars}
+	 * @return true if the application version exists, false otherwise
+	 */
 	public boolean doesApplicationVersionExist(PrintStream log, EnvVars env) {
-		return _getApplicationVersion(log, env, false, "id")!=null;
+		JSONMap applicationVersion = _getApplicationVersion(log, env, false, "id");
+		if ( applicationVersion != null ) {
+			cacheApplicationVersionId(log, env, applicationVersion.get("id", String.class));
+		} else {
+			getApplicationCatalog().remove(getExpandedApplicationName(log, env), getExpandedVersionName(log, env));
+		}
+		return applicationVersion!=null;
 	}
 	
+	/**
+	 * Get the application version id for the configured application and version name,
+	 * either from {@link FortifySSCApplicationVersionIdCache} or from SSC.
+	 * @param log Jenkins console log
+	 * @param env Jenkins {@link EnvVars}
+	 * @return Application version id
+	 */
 	public String getApplicationVersionId(PrintStream log, EnvVars env) {
-		return getApplicationVersion(log, env).get("id", String.class);
+		return getApplicationVersionId(getExpandedApplicationName(log, env), getExpandedVersionName(log, env));
+	}
+	
+	/**
+	 * Get the application version id for the given application and version name,
+	 * either from {@link FortifySSCApplicationVersionIdCache} or from SSC. The 
+	 * {@link FortifySSCApplicationCatalog} is not used for looking up id's, as it may
+	 * still contain application versions that have been deleted on SSC. This allows
+	 * operations to look up application versions other than the configured one.
+	 * @param applicationName Application name
+	 * @param versionName Version name
+	 * @return Application version id
+	 */
+	public static String getApplicationVersionId(String applicationName, String versionName) {
+		checkNotBlank(applicationName, "Application name cannot be blank");
+		checkNotBlank(versionName, "Version name cannot be blank");
+		FortifySSCApplicationVersionIdCache cache = getApplicationVersionIdCache();
+		String result = cache.get(applicationName, versionName);
+		if ( result == null ) {
+			JSONMap applicationVersion = FortifySSCGlobalConfiguration.get().conn().api(SSCApplicationVersionAPI.class).queryApplicationVersions()
+					.applicationName(applicationName).versionName(versionName).useCache(true).build().getUnique();
+			if ( applicationVersion == null ) {
+				getApplicationCatalog().remove(applicationName, versionName);
+				throw new AbortWithMessageException("Application version "+applicationName+":"+versionName+" not found");
+			}
+			result = applicationVersion.get("id", String.class);
+			cache.put(applicationName, versionName, result);
+			getApplicationCatalog().put(applicationName, versionName, result);
+		}
+		return result;
 	}
 	
-	private void checkNotBlank(String stringToCheck, String messageIfBlank) {
+	/**
+	 * Add the given application version id to the {@link FortifySSCApplicationVersionIdCache},
+	 * for example after creating a new application version.
+	 * @param log Jenkins console log
+	 * @param env Jenkins {@link EnvVars}
+	 * @param applicationVersionId Application version id for the configured application and version name
+	 */
+	public void cacheApplicationVersionId(PrintStream log, EnvVars env, String applicationVersionId) {
+		String applicationName = getExpandedApplicationName(log, env);
+		String versionName = getExpandedVersionName(log, env);
+		getApplicationVersionIdCache().put(applicationName, versionName, applicationVersionId);
+		getApplicationCatalog().put(applicationName, versionName, applicationVersionId);
+	}
+	
+	/**
+	 * Remove the cached application version id for the configured application and version name,
+	 * for example because SSC returned HTTP 404 for the cached id.
+	 * @param log Jenkins console log
+	 * @param env Jenkins {@link EnvVars}
+	 * @return true if a cached application version id was removed, false otherwise
+	 */
+	public boolean invalidateApplicationVersionId(PrintStream log, EnvVars env) {
+		String applicationName = getExpandedApplicationName(log, env);
+		String versionName = getExpandedVersionName(log, env);
+		getApplicationCatalog().remove(applicationName, versionName);
+		return getApplicationVersionIdCache().invalidate(applicationName, versionName);
+	}
+	
+	private static FortifySSCApplicationVersionIdCache getApplicationVersionIdCache() {
+		return FortifySSCGlobalConfiguration.get().getApplicationVersionIdCache();
+	}
+	
+	private static FortifySSCApplicationCatalog getApplicationCatalog() {
+		return FortifySSCGlobalConfiguration.get().getApplicationCatalog();
+	}
+	
+	private static void checkNotBlank(String stringToCheck, String messageIfBlank) {
 		if ( StringUtils.isBlank(stringToCheck) ) {
 			throw new AbortWithMessageException(messageIfBlank);
 		}
@@ -118,31 +216,57 @@ public class FortifySSCApplicationAndVersionName extends AbstractConfigurable {
 	
 	@Extension
 	public static final class FortifySSCDescriptorApplicationAndVersionName extends AbstractDescriptorConfigurable {
+		static final int MAX_AUTO_COMPLETION_CANDIDATES = 25;
+		
 		@Override
 		public String getDisplayName() {
 			// TODO Internationalize this
 			return "Configure application and version name";
 		}
 		
-        public ComboBoxModel doFillApplicationNameItems(@QueryParameter String refreshApplicationName) {
-        	final ComboBoxModel items = new ComboBoxModel();
-        	if ( StringUtils.isNotBlank(refreshApplicationName) ) {
-	        	try {
+		/**
+		 * Auto-complete application names. Matching application names are looked up in the
+		 * {@link FortifySSCApplicationCatalog}; if the catalog is not available yet, the typed
+		 * prefix is sent to SSC as a search filter. At most {@link #MAX_AUTO_COMPLETION_CANDIDATES}
+		 * matching application names are returned, so the cost of auto-completion doesn't depend
+		 * on the number of applications on SSC.
+		 */
+		public AutoCompletionCandidates doAutoCompleteApplicationName(@QueryParameter String value) {
+			final AutoCompletionCandidates candidates = new AutoCompletionCandidates();
+			List<String> catalogNames = StringUtils.isBlank(value) ? null : getApplicationCatalog().findApplicationNames(value, MAX_AUTO_COMPLETION_CANDIDATES);
+			if ( catalogNames != null ) {
+				candidates.getValues().addAll(catalogNames);
+			} else if ( StringUtils.isNotBlank(value) && !value.contains("${") ) {
+				try {
 					SSCAuthenticatingRestConnection conn = FortifySSCGlobalConfiguration.get().conn();
 					if ( conn != null ) {
-						conn.api(SSCApplicationAPI.class).queryApplications().build()
-								.processAll(new AddNamesToComboBoxModel(items));
+						JSONMap response = conn.executeRequest(HttpMethod.GET, conn.getBaseResource().path("api/v1/projects")
+								.queryParam("q", "name:\""+value.replace("\"", "")+"*\"")
+								.queryParam("fields", "name").queryParam("orderby", "name")
+								.queryParam("limit", String.valueOf(MAX_AUTO_COMPLETION_CANDIDATES)), JSONMap.class, false);
+						JSONList applications = response.get("data", JSONList.class);
+						if ( applications != null ) {
+							AddNamesToAutoCompletionCandidates processor = new AddNamesToAutoCompletionCandidates(candidates);
+							for ( JSONMap application : applications.asValueType(JSONMap.class) ) {
+								processor.process(application);
+							}
+						}
 					}
-	        	} catch ( Exception e ) {
-	        		e.printStackTrace();
-	        	}
-        	}
-			return items;
+				} catch ( Exception e ) {
+					LOG.log(Level.WARNING, "Error retrieving application names from SSC", e);
+				}
+			}
+			return candidates;
 		}
 
 		public ComboBoxModel doFillVersionNameItems(@QueryParameter String refreshVersionName, @QueryParameter String applicationName) {
 			final ComboBoxModel items = new ComboBoxModel();
 			if ( StringUtils.isNotBlank(refreshVersionName) && StringUtils.isNotBlank(applicationName) && !applicationName.contains("${") ) {
+				List<String> catalogNames = getApplicationCatalog().getVersionNames(applicationName);
+				if ( catalogNames != null ) {
+					items.addAll(catalogNames);
+					return items;
+				}
 				try {
 					SSCAuthenticatingRestConnection conn = FortifySSCGlobalConfiguration.get().conn();
 					if ( conn != null ) {
@@ -150,7 +274,7 @@ public class FortifySSCApplicationAndVersionName extends AbstractConfigurable {
 							.processAll(new AddNamesToComboBoxModel(items));
 					}
 				} catch ( Exception e ) {
-					e.printStackTrace(); // TODO log this instead of printing to console?
+					LOG.log(Level.WARNING, "Error retrieving version names from SSC", e);
 				}
 			}
 			return items;
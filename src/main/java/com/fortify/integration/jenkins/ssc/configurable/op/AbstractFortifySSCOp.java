@@ -25,15 +25,14 @@
 package com.fortify.integration.jenkins.ssc.configurable.op;
 
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.Collections;
 
 import com.fortify.integration.jenkins.configurable.AbortWithMessageException;
 import com.fortify.integration.jenkins.configurable.AbstractConfigurableWithErrorHandler;
-import com.fortify.integration.jenkins.ssc.configurable.FortifySSCApplicationAndVersionName;
-
-import hudson.FilePath;
-import hudson.Launcher;
-import hudson.model.Run;
-import hudson.model.TaskListener;
+import com.fortify.integration.jenkins.ssc.FortifySSCGlobalConfiguration;
+import com.fortify.integration.jenkins.ssc.connection.FortifySSCHttpStatusHelper;
 
 /**
  * Abstract base class for all SSC operations. Each operation 
@@ -43,12 +42,56 @@ import hudson.model.TaskListener;
 public abstract class AbstractFortifySSCOp extends AbstractConfigurableWithErrorHandler {
 	private static final long serialVersionUID = 1L;
 	
-	public final void performWithCheck(FortifySSCApplicationAndVersionName applicationAndVersionNameJobConfig, Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener) throws InterruptedException, IOException {
+	public final void performWithCheck(FortifySSCRunContext context) throws InterruptedException, IOException {
 		failIfConfigurationUnavailable(getDescriptor().getDisplayName()+" not enabled in global configuration");
-		if ( requiresWorkspace() && workspace == null ) { 
-			throw new AbortWithMessageException("no workspace for " + build);
+		if ( requiresWorkspace() && context.getWorkspace() == null ) { 
+			throw new AbortWithMessageException("no workspace for " + context.getRun());
+		}
+		try {
+			perform(context);
+		} catch ( RuntimeException e ) {
+			if ( !invalidateCachedDataIfStale(context, e) ) { throw e; }
+			if ( !isRetryable() ) {
+				// Cached data has been invalidated for subsequent operations and builds, but
+				// this operation may have partially completed, so we don't perform it again
+				context.getLog().println("[WARN] Not retrying operation '"+getDescriptor().getDisplayName()+"', as it may have partially completed");
+				throw e;
+			}
+			context.getLog().println("[INFO] Retrying operation '"+getDescriptor().getDisplayName()+"'");
+			perform(context);
+		}
+	}
+	
+	/**
+	 * Invalidate any cached data that caused the given exception. This handles SSC rejecting 
+	 * our cached authentication token (HTTP 401), and SSC not finding a cached application 
+	 * version id (HTTP 404), for example because the application version was deleted and re-created.
+	 * @return true if cached data was invalidated and the operation may be retried, false otherwise
+	 */
+	private boolean invalidateCachedDataIfStale(FortifySSCRunContext context, RuntimeException e) {
+		PrintStream log = context.getLog();
+		if ( FortifySSCHttpStatusHelper.isUnauthorized(e) && FortifySSCGlobalConfiguration.get().getConnectionManager().invalidateToken() ) {
+			log.println("[WARN] SSC authentication token was rejected; using new token from now on");
+			context.refreshConnection();
+			return true;
+		}
+		if ( FortifySSCHttpStatusHelper.isNotFound(e) && context.invalidateApplicationVersionId() ) {
+			log.println("[WARN] Cached application version id not found on SSC; invalidated cached application version id");
+			return true;
 		}
-		perform(applicationAndVersionNameJobConfig, build, workspace, launcher, listener);
+		return false;
+	}
+	
+	/**
+	 * Indicate whether this operation can safely be performed again after it failed due to
+	 * stale cached data, i.e. whether performing the operation multiple times has the same
+	 * effect as performing it once. By default this method returns false; operations that 
+	 * only read data from SSC, or that only overwrite data produced by an earlier attempt, 
+	 * should override this method to return true.
+	 * @return true if this operation can be retried, false otherwise
+	 */
+	protected boolean isRetryable() {
+		return false;
 	}
 	
 	/**
@@ -61,7 +104,41 @@ public abstract class AbstractFortifySSCOp extends AbstractConfigurableWithError
 		return true;
 	}
 
-	public abstract void perform(FortifySSCApplicationAndVersionName applicationAndVersionNameJobConfig, Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener) throws InterruptedException, IOException;
+	/**
+	 * Perform this operation.
+	 * @param context {@link FortifySSCRunContext} shared by all operations performed during the current run
+	 * @throws InterruptedException May be thrown by various Jenkins methods
+	 * @throws IOException May be thrown by various Jenkins methods
+	 */
+	public abstract void perform(FortifySSCRunContext context) throws InterruptedException, IOException;
 	
-	public static abstract class AbstractFortifySSCDescriptorOp extends AbstractDescriptorConfigurableWithErrorHandler {}
+	@Override
+	public AbstractFortifySSCDescriptorOp getDescriptor() {
+		return (AbstractFortifySSCDescriptorOp)super.getDescriptor();
+	}
+	
+	public static abstract class AbstractFortifySSCDescriptorOp extends AbstractDescriptorConfigurableWithErrorHandler {
+		/**
+		 * Get the operation types that this operation depends on. Before this operation is
+		 * started, any preceding operations of these types must have completed. By default,
+		 * this method returns {@link AbstractFortifySSCOp}, meaning that the operation depends 
+		 * on all preceding operations. Operations that can run in parallel with some preceding
+		 * operations should override this method.
+		 * @return Operation types that must have completed before this operation can be started
+		 */
+		public Collection<Class<? extends AbstractFortifySSCOp>> getDependencies() {
+			return Collections.<Class<? extends AbstractFortifySSCOp>>singleton(AbstractFortifySSCOp.class);
+		}
+		
+		/**
+		 * @param op Preceding operation
+		 * @return true if an operation of this type must wait for the given preceding operation to complete, false otherwise
+		 */
+		public final boolean dependsOn(AbstractFortifySSCOp op) {
+			for ( Class<? extends AbstractFortifySSCOp> dependency : getDependencies() ) {
+				if ( dependency.isInstance(op) ) { return true; }
+			}
+			return false;
+		}
+	}
 }
\ No newline at end of file
@@ -26,6 +26,11 @@ package com.fortify.integration.jenkins.ssc.configurable.op;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -35,25 +40,36 @@ import org.kohsuke.stapler.QueryParameter;
 import com.fortify.client.ssc.api.SSCIssueAPI;
 import com.fortify.client.ssc.connection.SSCAuthenticatingRestConnection;
 import com.fortify.integration.jenkins.configurable.AbortWithMessageException;
+import com.fortify.integration.jenkins.configurable.ModelHelper;
 import com.fortify.integration.jenkins.ssc.FortifySSCGlobalConfiguration;
-import com.fortify.integration.jenkins.ssc.configurable.FortifySSCApplicationAndVersionName;
+import com.fortify.integration.jenkins.ssc.issue.FortifySSCIssueCounter;
+import com.fortify.integration.jenkins.ssc.issue.FortifySSCIssueSearchStringParser;
+import com.fortify.integration.jenkins.ssc.storage.FortifySSCIssueFingerprintDiff;
+import com.fortify.integration.jenkins.ssc.storage.FortifySSCIssueFingerprintStore;
+import com.fortify.integration.jenkins.ssc.storage.FortifySSCIssueFingerprints;
 import com.fortify.util.rest.json.JSONMap;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import hudson.EnvVars;
 import hudson.Extension;
-import hudson.FilePath;
-import hudson.Launcher;
 import hudson.model.Run;
-import hudson.model.TaskListener;
 import hudson.util.ComboBoxModel;
 import hudson.util.FormValidation;
 
-// TODO Add support for selecting SSC filterset
+/**
+ * Check the number of issues matching a single search string. For checking multiple 
+ * issue counts, optionally using a specific filter set, see {@link FortifySSCCheckSecurityGateOp}.
+ */
 public class FortifySSCCheckIssueCountOp extends AbstractFortifySSCOp {
 	private static final long serialVersionUID = 1L;
 	private String searchString;
 	private String operator;
 	private String rhsNumber;
+	// May be null for operations saved by older plugin versions, as these are loaded without 
+	// calling configureDefaultValuesAfterErrorHandler; null is interpreted as 'No'
+	private String newIssuesOnly;
 	
 	/**
 	 * Default constructor
@@ -66,6 +82,7 @@ public class FortifySSCCheckIssueCountOp extends AbstractFortifySSCOp {
 		setSearchString("");
 		setOperator(">");
 		setRhsNumber("0");
+		setNewIssuesOnly("No");
 	}
 	
 	public String getSearchString() {
@@ -107,27 +124,71 @@ public class FortifySSCCheckIssueCountOp extends AbstractFortifySSCOp {
 		this.rhsNumber = rhsNumber;
 	}
 
+	public String getNewIssuesOnly() {
+		return getExpandedNewIssuesOnly(null, null);
+	}
+
+	public String getExpandedNewIssuesOnly(PrintStream log, EnvVars env) {
+		return getExpandedPropertyValueOrDefaultValueIfOverrideDisallowed(log, env, "newIssuesOnly", newIssuesOnly);
+	}
+
+	@DataBoundSetter
+	public void setNewIssuesOnly(String newIssuesOnly) {
+		this.newIssuesOnly = newIssuesOnly;
+	}
+
 	@Override
-	public void perform(FortifySSCApplicationAndVersionName applicationAndVersionNameJobConfig, Run<?, ?> run,
-			FilePath workspace, Launcher launcher, TaskListener listener) throws InterruptedException, IOException {
-		PrintStream log = listener.getLogger();
-		EnvVars env = run.getEnvironment(listener);
+	public void perform(FortifySSCRunContext context) throws InterruptedException, IOException {
+		PrintStream log = context.getLog();
+		EnvVars env = context.getEnv();
 		//TODO Check really an int
 		int numberToCompare = Integer.parseInt(getRhsNumber(log, env));
 		String operator = getOperator(log, env);
 		String searchString = getExpandedSearchString(log, env);
 		
-		SSCAuthenticatingRestConnection conn = FortifySSCGlobalConfiguration.get().conn();
-		final String applicationVersionId = applicationAndVersionNameJobConfig.getApplicationVersionId(log, env);
-		int numberOfIssues = conn.api(SSCIssueAPI.class).queryIssues(applicationVersionId)
-			.paramFilter(searchString).maxResults(numberToCompare+1).paramFields("id").useCache(false)
-			.build().getAll().size();
-		if ( compare(numberOfIssues, operator, numberToCompare) ) {
-			throw new AbortWithMessageException("Number of issues matching '"+searchString+"' "+operator+" "+numberToCompare);
+		SSCAuthenticatingRestConnection conn = context.getConnection();
+		final String applicationVersionId = context.getApplicationVersionId();
+		if ( ModelHelper.isBooleanComboBoxValueTrue(getExpandedNewIssuesOnly(log, env)) ) {
+			int numberOfNewIssues = countNewIssues(log, context.getRun(), conn, applicationVersionId, searchString);
+			log.println("[INFO] Number of new issues matching '"+searchString+"': "+numberOfNewIssues);
+			if ( compare(numberOfNewIssues, operator, numberToCompare) ) {
+				throw new AbortWithMessageException("Number of new issues matching '"+searchString+"' "+operator+" "+numberToCompare);
+			}
+		} else {
+			int numberOfIssues = FortifySSCIssueCounter.countIssues(conn, applicationVersionId, searchString);
+			log.println("[INFO] Number of issues matching '"+searchString+"': "+numberOfIssues);
+			if ( compare(numberOfIssues, operator, numberToCompare) ) {
+				throw new AbortWithMessageException("Number of issues matching '"+searchString+"' "+operator+" "+numberToCompare);
+			}
 		}
 	}
+	
+	/**
+	 * This operation only reads data from SSC, so it can safely be retried
+	 */
+	@Override
+	protected boolean isRetryable() {
+		return true;
+	}
+	
+	/**
+	 * Count the issues matching the given search string that were not present in the last
+	 * successful build, based on the issue fingerprints stored by {@link FortifySSCPublishResultsToJenkinsOp}.
+	 * If no previous fingerprints are available, all matching issues are considered new.
+	 */
+	private int countNewIssues(PrintStream log, Run<?, ?> run, SSCAuthenticatingRestConnection conn, String applicationVersionId, String searchString) {
+		FortifySSCIssueFingerprints current = FortifySSCIssueFingerprintStore.query(conn, applicationVersionId, searchString);
+		Run<?, ?> previousRun = FortifySSCIssueFingerprintStore.findLastSuccessfulRunWithFingerprints(run);
+		FortifySSCIssueFingerprints previous = previousRun==null ? null : FortifySSCIssueFingerprintStore.load(previousRun);
+		if ( previous == null ) {
+			log.println("[WARN] No issue fingerprints available for a previous successful build; considering all matching issues as new");
+			return current.size();
+		}
+		log.println("[INFO] Comparing issues with "+previousRun.getFullDisplayName());
+		return FortifySSCIssueFingerprintDiff.compare(previous, current).getNewIssues().size();
+	}
 
-	private boolean compare(int value1, String operator, int value2) {
+	static boolean compare(int value1, String operator, int value2) {
 		switch (operator) {
 			case "<":
 				return value1 < value2;
@@ -144,6 +205,9 @@ public class FortifySSCCheckIssueCountOp extends AbstractFortifySSCOp {
 	@Extension
 	public static final class FortifySSCDescriptorCheckIssueCountOp extends AbstractFortifySSCDescriptorOp {
 		static final String DISPLAY_NAME = "Check Issue Count";
+		private static final int MAX_VALIDATED_SEARCH_STRINGS = 1000;
+		private final transient Cache<String, FormValidation> validatedSearchStrings = CacheBuilder.newBuilder()
+				.maximumSize(MAX_VALIDATED_SEARCH_STRINGS).expireAfterWrite(1, TimeUnit.HOURS).build();
 		
 		@Override
 		public String getDisplayName() {
@@ -156,6 +220,12 @@ public class FortifySSCCheckIssueCountOp extends AbstractFortifySSCOp {
 			return 500;
 		}
 		
+		/** Issue counts must be checked after any FPR uploads, but multiple checks may run in parallel */
+		@Override
+		public Collection<Class<? extends AbstractFortifySSCOp>> getDependencies() {
+			return Arrays.<Class<? extends AbstractFortifySSCOp>>asList(FortifySSCCreateApplicationVersionOp.class, FortifySSCUploadFPROp.class);
+		}
+		
 		public ComboBoxModel doFillOperatorItems() {
 			final ComboBoxModel items = new ComboBoxModel();
 			items.add("<");
@@ -164,26 +234,46 @@ public class FortifySSCCheckIssueCountOp extends AbstractFortifySSCOp {
 			return items;
 		}
 		
-		public FormValidation doCheckSearchString(@QueryParameter String searchString) {
+		public ComboBoxModel doFillNewIssuesOnlyItems() {
+			return ModelHelper.createBooleanComboBoxModel();
+		}
+		
+		/**
+		 * Validate the given search string. Search strings are first checked locally by 
+		 * {@link FortifySSCIssueSearchStringParser}; syntactically valid search strings are 
+		 * then validated by SSC, with SSC validation results being remembered for a limited
+		 * number of search strings, so editing a search string doesn't result in a request
+		 * to SSC for every validation event.
+		 */
+		public FormValidation doCheckSearchString(@QueryParameter final String searchString) {
 			if ( searchString != null && searchString.contains("${") ) {
 				return FormValidation.warning("Cannot validate search string containing variables");
-			} else {
-				try {
-					SSCAuthenticatingRestConnection conn = FortifySSCGlobalConfiguration.get().conn();
-					if ( conn != null ) {
-						JSONMap result = conn.api(SSCIssueAPI.class).validateIssueSearchString(searchString);
-						if ( Boolean.TRUE.equals(result.get("valid", Boolean.class)) ) { //explicit equals to prevent rare NPE
-							return FormValidation.ok();
-						} else {
-							return FormValidation.error(result.get("msg", String.class));
+			} 
+			String syntaxError = FortifySSCIssueSearchStringParser.validate(searchString);
+			if ( syntaxError != null ) {
+				return FormValidation.error(syntaxError);
+			}
+			try {
+				final SSCAuthenticatingRestConnection conn = FortifySSCGlobalConfiguration.get().conn();
+				if ( conn != null ) {
+					return validatedSearchStrings.get(conn.getBaseUrl()+"\n"+searchString, new Callable<FormValidation>() {
+						@Override
+						public FormValidation call() {
+							JSONMap result = conn.api(SSCIssueAPI.class).validateIssueSearchString(searchString);
+							if ( Boolean.TRUE.equals(result.get("valid", Boolean.class)) ) { //explicit equals to prevent rare NPE
+								return FormValidation.ok();
+							} else {
+								return FormValidation.error(result.get("msg", String.class));
+							}
 						}
-					} else {
-						return FormValidation.error("Cannot validate search string: SSC connection not available");
-					}
-				} catch ( Exception e ) {
-					e.printStackTrace();
-					return FormValidation.error("Cannot validate search string: "+e.getMessage());
+					});
+				} else {
+					return FormValidation.error("Cannot validate search string: SSC connection not available");
 				}
+			} catch ( Exception e ) {
+				Throwable cause = e instanceof ExecutionException || e instanceof UncheckedExecutionException ? e.getCause() : e;
+				cause.printStackTrace();
+				return FormValidation.error("Cannot validate search string: "+cause.getMessage());
 			}
 		}
     }
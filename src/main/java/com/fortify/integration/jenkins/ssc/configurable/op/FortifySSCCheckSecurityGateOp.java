@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.configurable.op;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import com.fortify.integration.jenkins.configurable.AbortWithMessageException;
+import com.fortify.integration.jenkins.ssc.issue.FortifySSCIssueGroupCounter;
+
+import hudson.EnvVars;
+import hudson.Extension;
+
+/**
+ * <p>This operation evaluates a table of {@link FortifySSCSecurityGateRule}s against the
+ * issue group counts for the current application version, optionally using a specific
+ * SSC filter set. Issue group counts are retrieved once per distinct grouping type, 
+ * independent of the number of rules, and all rules are evaluated locally. If any rules
+ * are violated, all violations are reported together.</p>
+ * 
+ * @author Ruud Senden
+ *
+ */
+public class FortifySSCCheckSecurityGateOp extends AbstractFortifySSCOp {
+	private static final long serialVersionUID = 1L;
+	private String filterSetName;
+	private List<FortifySSCSecurityGateRule> rules;
+	
+	/**
+	 * Default constructor
+	 */
+	@DataBoundConstructor
+	public FortifySSCCheckSecurityGateOp() {}
+	
+	@Override
+	protected void configureDefaultValuesAfterErrorHandler() {
+		setFilterSetName("");
+		setRules(new ArrayList<FortifySSCSecurityGateRule>());
+	}
+	
+	public String getFilterSetName() {
+		return getExpandedFilterSetName(null, null);
+	}
+	
+	public String getExpandedFilterSetName(PrintStream log, EnvVars env) {
+		return getExpandedPropertyValueOrDefaultValueIfOverrideDisallowed(log, env, "filterSetName", filterSetName);
+	}
+
+	@DataBoundSetter
+	public void setFilterSetName(String filterSetName) {
+		this.filterSetName = filterSetName;
+	}
+
+	public List<FortifySSCSecurityGateRule> getRules() {
+		return getRules(null, null);
+	}
+	
+	public List<FortifySSCSecurityGateRule> getRules(PrintStream log, EnvVars env) {
+		return getExpandedPropertyValueOrDefaultValueIfOverrideDisallowed(log, env, "rules", rules);
+	}
+
+	@DataBoundSetter
+	public void setRules(List<FortifySSCSecurityGateRule> rules) {
+		this.rules = rules;
+	}
+
+	@Override
+	public void perform(FortifySSCRunContext context) throws InterruptedException, IOException {
+		PrintStream log = context.getLog();
+		EnvVars env = context.getEnv();
+		List<FortifySSCSecurityGateRule> rules = getRules(log, env);
+		if ( rules == null || rules.isEmpty() ) {
+			log.println("[WARN] No security gate rules configured");
+			return;
+		}
+		FortifySSCIssueGroupCounter counter = new FortifySSCIssueGroupCounter(context.getConnection(), 
+				context.getApplicationVersionId(), getExpandedFilterSetName(log, env));
+		List<String> violations = new ArrayList<>();
+		for ( FortifySSCSecurityGateRule rule : rules ) {
+			String groupingType = env.expand(rule.getGroupingType());
+			String groupName = env.expand(rule.getGroupName());
+			String operator = rule.getOperator();
+			int numberToCompare = parseNumber(env.expand(rule.getRhsNumber()));
+			if ( StringUtils.isBlank(groupingType) || StringUtils.isBlank(groupName) ) {
+				throw new AbortWithMessageException("Security gate rule must specify grouping type and group name: "+rule);
+			}
+			int numberOfIssues = counter.getCount(groupingType, groupName);
+			String description = groupingType+" '"+groupName+"': "+numberOfIssues+" issues ("+operator+" "+numberToCompare+" fails)";
+			if ( FortifySSCCheckIssueCountOp.compare(numberOfIssues, operator, numberToCompare) ) {
+				log.println("[ERROR] "+description);
+				violations.add(description);
+			} else {
+				log.println("[INFO] "+description);
+			}
+		}
+		if ( !violations.isEmpty() ) {
+			throw new AbortWithMessageException("Security gate failed; "+violations.size()+" of "+rules.size()+" rules violated: "+StringUtils.join(violations, "; "));
+		}
+	}
+	
+	/**
+	 * This operation only reads data from SSC, so it can safely be retried
+	 */
+	@Override
+	protected boolean isRetryable() {
+		return true;
+	}
+	
+	private int parseNumber(String number) {
+		try {
+			return Integer.parseInt(StringUtils.trim(number));
+		} catch ( NumberFormatException e ) {
+			throw new AbortWithMessageException("Invalid number in security gate rule: '"+number+"'");
+		}
+	}
+	
+	@Symbol("checkSecurityGate")
+	@Extension
+	public static final class FortifySSCDescriptorCheckSecurityGateOp extends AbstractFortifySSCDescriptorOp {
+		static final String DISPLAY_NAME = "Check Security Gate";
+		
+		@Override
+		public String getDisplayName() {
+			// TODO Internationalize this
+			return DISPLAY_NAME;
+		}
+		
+		@Override
+		public int getOrder() {
+			return 600;
+		}
+		
+		/** Security gates must be checked after any FPR uploads, but may run in parallel with other checks */
+		@Override
+		public Collection<Class<? extends AbstractFortifySSCOp>> getDependencies() {
+			return Arrays.<Class<? extends AbstractFortifySSCOp>>asList(FortifySSCCreateApplicationVersionOp.class, FortifySSCUploadFPROp.class);
+		}
+	}
+}
@@ -26,6 +26,8 @@ package com.fortify.integration.jenkins.ssc.configurable.op;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Collection;
+import java.util.Collections;
 
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.Symbol;
@@ -34,20 +36,14 @@ import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
 import com.fortify.client.ssc.api.SSCApplicationVersionAPI;
-import com.fortify.client.ssc.api.SSCIssueTemplateAPI;
 import com.fortify.client.ssc.connection.SSCAuthenticatingRestConnection;
 import com.fortify.integration.jenkins.ssc.FortifySSCGlobalConfiguration;
+import com.fortify.integration.jenkins.ssc.cache.FortifySSCIssueTemplateCatalog;
 import com.fortify.integration.jenkins.ssc.configurable.FortifySSCApplicationAndVersionName;
-import com.fortify.util.rest.json.JSONList;
-import com.fortify.util.rest.json.JSONMap;
 
 import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.Extension;
-import hudson.FilePath;
-import hudson.Launcher;
-import hudson.model.Run;
-import hudson.model.TaskListener;
 import hudson.util.ComboBoxModel;
 
 public class FortifySSCCreateApplicationVersionOp extends AbstractFortifySSCOp {
@@ -79,22 +75,22 @@ public class FortifySSCCreateApplicationVersionOp extends AbstractFortifySSCOp {
 	}
 	
 	@Override
-	public void perform(FortifySSCApplicationAndVersionName applicationAndVersionNameJobConfig, Run<?, ?> run,
-			FilePath workspace, Launcher launcher, TaskListener listener) throws InterruptedException, IOException 
+	public void perform(FortifySSCRunContext context) throws InterruptedException, IOException 
 	{
-		EnvVars env = run.getEnvironment(listener);
-		PrintStream log = listener.getLogger();
-		if ( !applicationAndVersionNameJobConfig.doesApplicationVersionExist(log, env) ) {
+		EnvVars env = context.getEnv();
+		PrintStream log = context.getLog();
+		if ( !context.doesApplicationVersionExist() ) {
 			log.println("[INFO] Application version does not exist; creating new application version");
+			FortifySSCApplicationAndVersionName applicationAndVersionNameJobConfig = context.getApplicationAndVersionNameJobConfig();
 			String expandedApplicationName = applicationAndVersionNameJobConfig.getExpandedApplicationName(log, env);
 			String expandedVersionName = applicationAndVersionNameJobConfig.getExpandedVersionName(log, env);
-			createApplicationVersion(log, env, expandedApplicationName, expandedVersionName);
+			String applicationVersionId = createApplicationVersion(context.getConnection(), log, env, expandedApplicationName, expandedVersionName);
+			context.setApplicationVersionId(applicationVersionId);
 			log.println("[INFO] Created application version "+expandedApplicationName+":"+expandedVersionName);
 		}
 	}
 	
-	private String createApplicationVersion(PrintStream log, EnvVars env, String expandedApplicationName, String expandedVersionName) throws AbortException {
-		SSCAuthenticatingRestConnection conn = FortifySSCGlobalConfiguration.get().conn();
+	private String createApplicationVersion(SSCAuthenticatingRestConnection conn, PrintStream log, EnvVars env, String expandedApplicationName, String expandedVersionName) throws AbortException {
 		String issueTemplateName = getExpandedIssueTemplateName(log, env);
 		return conn.api(SSCApplicationVersionAPI.class).createApplicationVersion()
 			.issueTemplateName(issueTemplateName)
@@ -123,34 +119,33 @@ public class FortifySSCCreateApplicationVersionOp extends AbstractFortifySSCOp {
 		public ComboBoxModel doFillIssueTemplateNameItems(@QueryParameter String refreshIssueTemplateName) {
 			final ComboBoxModel items = new ComboBoxModel();
 			if ( StringUtils.isNotBlank(refreshIssueTemplateName) ) {
-				// Exceptions are already handled in getIssueTemplates(), so no need for try/catch
-				JSONList issueTemplates = getIssueTemplates();
-				for ( JSONMap issueTemplate : issueTemplates.asValueType(JSONMap.class) ) {
-					items.add(issueTemplate.get("name", String.class));
-				}
+				// Exceptions are already handled by the issue template catalog, so no need for try/catch
+				items.addAll(getIssueTemplateCatalog().getIssueTemplateNames());
 			}
 			return items;
 		}
         
+		/**
+		 * @return Default issue template name, served from the shared {@link FortifySSCIssueTemplateCatalog}
+		 *         so that creating new instances of this operation doesn't require a request to SSC
+		 */
         public String getDefaultIssueTemplateName() {
-        	return getIssueTemplates().mapValue("defaultTemplate", true, "name", String.class);
+        	return getIssueTemplateCatalog().getDefaultIssueTemplateName();
         }
         
-        protected JSONList getIssueTemplates() {
-        	SSCAuthenticatingRestConnection conn = FortifySSCGlobalConfiguration.get().conn();
-        	if ( conn != null ) {
-        		try {
-        			return conn.api(SSCIssueTemplateAPI.class).getIssueTemplates(true);
-        		} catch ( Exception e ) {
-        			e.printStackTrace();
-        		}
-        	}
-        	return new JSONList();
+        private FortifySSCIssueTemplateCatalog getIssueTemplateCatalog() {
+        	return FortifySSCGlobalConfiguration.get().getIssueTemplateCatalog();
 		}
 		
 		@Override
 		public int getOrder() {
 			return 100;
 		}
+		
+		/** Creating an application version doesn't depend on any other operations */
+		@Override
+		public Collection<Class<? extends AbstractFortifySSCOp>> getDependencies() {
+			return Collections.emptySet();
+		}
 	}
 }
@@ -24,19 +24,31 @@
  ******************************************************************************/
 package com.fortify.integration.jenkins.ssc.configurable.op;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collection;
 
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
 
+import com.fortify.client.ssc.connection.SSCAuthenticatingRestConnection;
 import com.fortify.integration.jenkins.ssc.action.FortifySSCPublishAction;
-import com.fortify.integration.jenkins.ssc.configurable.FortifySSCApplicationAndVersionName;
+import com.fortify.integration.jenkins.ssc.issue.FortifySSCIssueQuery;
+import com.fortify.integration.jenkins.ssc.issue.FortifySSCIssueSummary;
+import com.fortify.integration.jenkins.ssc.json.processor.AddIssueInstanceIdsToFingerprints;
+import com.fortify.integration.jenkins.ssc.json.processor.AddIssuesToSnapshot;
+import com.fortify.integration.jenkins.ssc.storage.FortifySSCIssueFingerprintDiff;
+import com.fortify.integration.jenkins.ssc.storage.FortifySSCIssueFingerprintStore;
+import com.fortify.integration.jenkins.ssc.storage.FortifySSCIssueFingerprints;
+import com.fortify.integration.jenkins.ssc.storage.FortifySSCIssueSnapshot;
+import com.fortify.integration.jenkins.ssc.storage.FortifySSCIssueTrend;
+import com.fortify.util.rest.json.JSONMap;
+import com.fortify.util.rest.json.processor.AbstractJSONMapProcessor;
 
 import hudson.Extension;
-import hudson.FilePath;
-import hudson.Launcher;
 import hudson.model.Run;
-import hudson.model.TaskListener;
 
 public class FortifySSCPublishResultsToJenkinsOp extends AbstractFortifySSCOp {
 	private static final long serialVersionUID = 1L;
@@ -53,13 +65,68 @@ public class FortifySSCPublishResultsToJenkinsOp extends AbstractFortifySSCOp {
 	}
 	
 	@Override
-	public void perform(FortifySSCApplicationAndVersionName applicationAndVersionNameJobConfig, Run<?, ?> run,
-			FilePath workspace, Launcher launcher, TaskListener listener) throws InterruptedException, IOException {
-		//PrintStream log = listener.getLogger();
-		//EnvVars env = run.getEnvironment(listener);
-		//final String applicationVersionId = applicationAndVersionNameJobConfig.getApplicationVersionId(log, env);
-		//SSCAuthenticatingRestConnection conn = FortifySSCGlobalConfiguration.get().conn();
-		run.addOrReplaceAction(new FortifySSCPublishAction(run.getParent()));
+	public void perform(FortifySSCRunContext context) throws InterruptedException, IOException {
+		PrintStream log = context.getLog();
+		//EnvVars env = context.getEnv();
+		final String applicationVersionId = context.getApplicationVersionId();
+		SSCAuthenticatingRestConnection conn = context.getConnection();
+		Run<?, ?> run = context.getRun();
+		FortifySSCIssueFingerprints fingerprints = publishIssueSnapshot(log, run, conn, applicationVersionId);
+		FortifySSCIssueFingerprintDiff diff = publishIssueFingerprints(log, run, fingerprints);
+		FortifySSCIssueSummary summary = FortifySSCIssueSummary.query(log, conn, applicationVersionId, fingerprints.size());
+		run.addOrReplaceAction(new FortifySSCPublishAction(applicationVersionId, summary));
+		FortifySSCIssueTrend.append(run.getParent(), FortifySSCIssueTrend.Entry.create(run, summary, diff));
+	}
+	
+	/**
+	 * This operation only overwrites data published by an earlier attempt, so it can safely be retried
+	 */
+	@Override
+	protected boolean isRetryable() {
+		return true;
+	}
+	
+	/**
+	 * Stream all issues of the given application version into the issue snapshot file of 
+	 * the given run, collecting the fingerprints of all issues in the same pass.
+	 * @return Fingerprints of all current issues
+	 */
+	private FortifySSCIssueFingerprints publishIssueSnapshot(PrintStream log, Run<?, ?> run, SSCAuthenticatingRestConnection conn, String applicationVersionId) throws IOException {
+		final FortifySSCIssueSnapshot.Builder snapshot = new FortifySSCIssueSnapshot.Builder();
+		final FortifySSCIssueFingerprints.Builder fingerprints = new FortifySSCIssueFingerprints.Builder();
+		final AddIssuesToSnapshot snapshotProcessor = new AddIssuesToSnapshot(snapshot);
+		final AddIssueInstanceIdsToFingerprints fingerprintsProcessor = new AddIssueInstanceIdsToFingerprints(fingerprints);
+		FortifySSCIssueQuery.processIssues(conn, applicationVersionId, null, FortifySSCIssueSnapshot.FIELDS, new AbstractJSONMapProcessor() {
+			@Override
+			public void process(JSONMap json) {
+				snapshotProcessor.process(json);
+				fingerprintsProcessor.process(json);
+			}
+		});
+		File file = FortifySSCIssueSnapshot.getFile(run);
+		snapshot.write(file);
+		log.println("[INFO] Stored snapshot of "+snapshot.size()+" issues ("+file.length()+" bytes)");
+		return fingerprints.build();
+	}
+	
+	/**
+	 * Store the given fingerprints of all current issues for the given run, and log the number of
+	 * new and fixed issues compared to the last successful build.
+	 * @return Difference with the last successful build, or null if there is no such build
+	 */
+	private FortifySSCIssueFingerprintDiff publishIssueFingerprints(PrintStream log, Run<?, ?> run, FortifySSCIssueFingerprints current) throws IOException {
+		Run<?, ?> previousRun = FortifySSCIssueFingerprintStore.findLastSuccessfulRunWithFingerprints(run);
+		FortifySSCIssueFingerprintStore.save(run, current);
+		FortifySSCIssueFingerprints previous = previousRun==null ? null : FortifySSCIssueFingerprintStore.load(previousRun);
+		if ( previous == null ) {
+			log.println("[INFO] Total issues: "+current.size()+" (no previous successful build to compare with)");
+			return null;
+		} else {
+			FortifySSCIssueFingerprintDiff diff = FortifySSCIssueFingerprintDiff.compare(previous, current);
+			log.println("[INFO] Total issues: "+current.size()+"; compared to "+previousRun.getFullDisplayName()+": "
+					+diff.getNewIssues().size()+" new, "+diff.getFixedIssues().size()+" fixed, "+diff.getUnchangedCount()+" unchanged");
+			return diff;
+		}
 	}
 	
 	@Symbol("publishResults")
@@ -77,5 +144,11 @@ public class FortifySSCPublishResultsToJenkinsOp extends AbstractFortifySSCOp {
 		public int getOrder() {
 			return 1000;
 		}
+		
+		/** Results must be published after any FPR uploads, but may be published in parallel with issue count checks */
+		@Override
+		public Collection<Class<? extends AbstractFortifySSCOp>> getDependencies() {
+			return Arrays.<Class<? extends AbstractFortifySSCOp>>asList(FortifySSCCreateApplicationVersionOp.class, FortifySSCUploadFPROp.class);
+		}
     }
 }
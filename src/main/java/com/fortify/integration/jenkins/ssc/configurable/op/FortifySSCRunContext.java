@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.configurable.op;
+
+import java.io.PrintStream;
+
+import com.fortify.client.ssc.connection.SSCAuthenticatingRestConnection;
+import com.fortify.integration.jenkins.configurable.GlobalConfigurationSnapshot;
+import com.fortify.integration.jenkins.ssc.FortifySSCGlobalConfiguration;
+import com.fortify.integration.jenkins.ssc.configurable.FortifySSCApplicationAndVersionName;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+/**
+ * <p>This class holds the context for all {@link AbstractFortifySSCOp} operations
+ * performed during a single run. The context is created once by the builder and
+ * passed to every operation, such that the {@link EnvVars} are computed only once,
+ * all operations use the same SSC connection, and the application version is 
+ * resolved at most once per run.</p>
+ * 
+ * <p>Operations may be performed concurrently, each logging to its own 
+ * {@link TaskListener}; see {@link #forListener(TaskListener)}. All mutable state
+ * is shared between these per-operation views, and guarded by a single lock.</p>
+ * 
+ * <p>The context also holds the {@link GlobalConfigurationSnapshot} that was current
+ * when the run started, such that all operations in a run see the same global 
+ * configuration, even if the global configuration is saved while the run is in progress.</p>
+ * 
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCRunContext {
+	private final FortifySSCApplicationAndVersionName applicationAndVersionNameJobConfig;
+	private final Run<?, ?> run;
+	private final FilePath workspace;
+	private final Launcher launcher;
+	private final TaskListener listener;
+	private final EnvVars env;
+	private final GlobalConfigurationSnapshot globalConfigurationSnapshot;
+	private final SharedState state;
+	
+	public FortifySSCRunContext(FortifySSCApplicationAndVersionName applicationAndVersionNameJobConfig, Run<?, ?> run, FilePath workspace, Launcher launcher, TaskListener listener, EnvVars env, SSCAuthenticatingRestConnection conn, GlobalConfigurationSnapshot globalConfigurationSnapshot) {
+		this.applicationAndVersionNameJobConfig = applicationAndVersionNameJobConfig;
+		this.run = run;
+		this.workspace = workspace;
+		this.launcher = launcher;
+		this.listener = listener;
+		this.env = env;
+		this.globalConfigurationSnapshot = globalConfigurationSnapshot;
+		this.state = new SharedState(conn);
+	}
+	
+	private FortifySSCRunContext(FortifySSCRunContext original, TaskListener listener) {
+		this.applicationAndVersionNameJobConfig = original.applicationAndVersionNameJobConfig;
+		this.run = original.run;
+		this.workspace = original.workspace;
+		this.launcher = original.launcher;
+		this.listener = listener;
+		this.env = original.env;
+		this.globalConfigurationSnapshot = original.globalConfigurationSnapshot;
+		this.state = original.state;
+	}
+	
+	/**
+	 * Get a view of this context that logs to the given {@link TaskListener}.
+	 * The returned context shares the pinned connection and resolved application
+	 * version id with this context.
+	 * @param listener {@link TaskListener} to be used by the returned context
+	 * @return Context logging to the given {@link TaskListener}
+	 */
+	public FortifySSCRunContext forListener(TaskListener listener) {
+		return new FortifySSCRunContext(this, listener);
+	}
+	
+	public FortifySSCApplicationAndVersionName getApplicationAndVersionNameJobConfig() {
+		return applicationAndVersionNameJobConfig;
+	}
+
+	public Run<?, ?> getRun() {
+		return run;
+	}
+
+	public FilePath getWorkspace() {
+		return workspace;
+	}
+
+	public Launcher getLauncher() {
+		return launcher;
+	}
+
+	public TaskListener getListener() {
+		return listener;
+	}
+	
+	public PrintStream getLog() {
+		return listener.getLogger();
+	}
+
+	public EnvVars getEnv() {
+		return env;
+	}
+	
+	/**
+	 * @return The global configuration snapshot pinned for this run
+	 */
+	public GlobalConfigurationSnapshot getGlobalConfigurationSnapshot() {
+		return globalConfigurationSnapshot;
+	}
+
+	/**
+	 * @return The SSC connection pinned for this run
+	 */
+	public SSCAuthenticatingRestConnection getConnection() {
+		synchronized (state) {
+			return state.conn;
+		}
+	}
+	
+	/**
+	 * Re-pin the SSC connection for this run, for example because SSC
+	 * rejected the authentication token used by the current connection. 
+	 */
+	public void refreshConnection() {
+		synchronized (state) {
+			state.conn = FortifySSCGlobalConfiguration.get().conn();
+		}
+	}
+	
+	/**
+	 * Get the application version id for the configured application and version name.
+	 * The application version id is resolved only once per run.
+	 * @return Application version id
+	 */
+	public String getApplicationVersionId() {
+		synchronized (state) {
+			if ( state.applicationVersionId == null ) {
+				state.applicationVersionId = applicationAndVersionNameJobConfig.getApplicationVersionId(getLog(), env);
+			}
+			return state.applicationVersionId;
+		}
+	}
+	
+	/**
+	 * Check whether the configured application version exists. If the
+	 * application version id has already been resolved for this run,
+	 * this method doesn't query SSC.
+	 * @return true if the application version exists, false otherwise
+	 */
+	public boolean doesApplicationVersionExist() {
+		synchronized (state) {
+			return state.applicationVersionId != null || applicationAndVersionNameJobConfig.doesApplicationVersionExist(getLog(), env);
+		}
+	}
+	
+	/**
+	 * Set the application version id for this run, for example after 
+	 * creating a new application version.
+	 * @param applicationVersionId Application version id for the configured application and version name
+	 */
+	public void setApplicationVersionId(String applicationVersionId) {
+		synchronized (state) {
+			state.applicationVersionId = applicationVersionId;
+			applicationAndVersionNameJobConfig.cacheApplicationVersionId(getLog(), env, applicationVersionId);
+		}
+	}
+	
+	/**
+	 * Remove the application version id resolved for this run from both this
+	 * context and the controller-wide cache.
+	 * @return true if a cached application version id was removed, false otherwise
+	 */
+	public boolean invalidateApplicationVersionId() {
+		synchronized (state) {
+			boolean result = state.applicationVersionId != null;
+			state.applicationVersionId = null;
+			return applicationAndVersionNameJobConfig.invalidateApplicationVersionId(getLog(), env) || result;
+		}
+	}
+	
+	/**
+	 * Mutable state shared by all views of a single run context
+	 */
+	private static final class SharedState {
+		private SSCAuthenticatingRestConnection conn;
+		private String applicationVersionId;
+		
+		public SharedState(SSCAuthenticatingRestConnection conn) {
+			this.conn = conn;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.configurable.op;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import com.fortify.integration.jenkins.configurable.AbstractDescribable;
+
+import hudson.Extension;
+import hudson.util.ComboBoxModel;
+
+/**
+ * A single rule for {@link FortifySSCCheckSecurityGateOp}, specifying that the number
+ * of issues in a given issue group should not match the given comparison. For example,
+ * groupingType 'Folder', groupName 'Critical', operator '>' and rhsNumber '0' fails the
+ * security gate if there are any critical issues.
+ * 
+ * @author Ruud Senden
+ *
+ */
+public class FortifySSCSecurityGateRule extends AbstractDescribable<FortifySSCSecurityGateRule> {
+	private static final long serialVersionUID = 1L;
+	private String groupingType = "Folder";
+	private String groupName;
+	private String operator = ">";
+	private String rhsNumber = "0";
+	
+	@DataBoundConstructor
+	public FortifySSCSecurityGateRule() {}
+
+	public String getGroupingType() {
+		return groupingType;
+	}
+
+	@DataBoundSetter
+	public void setGroupingType(String groupingType) {
+		this.groupingType = groupingType;
+	}
+
+	public String getGroupName() {
+		return groupName;
+	}
+
+	@DataBoundSetter
+	public void setGroupName(String groupName) {
+		this.groupName = groupName;
+	}
+
+	public String getOperator() {
+		return operator;
+	}
+
+	@DataBoundSetter
+	public void setOperator(String operator) {
+		this.operator = operator;
+	}
+
+	public String getRhsNumber() {
+		return rhsNumber;
+	}
+
+	@DataBoundSetter
+	public void setRhsNumber(String rhsNumber) {
+		this.rhsNumber = rhsNumber;
+	}
+	
+	@Override
+	public String toString() {
+		return groupingType+" '"+groupName+"' "+operator+" "+rhsNumber;
+	}
+	
+	@Extension
+	public static final class FortifySSCDescriptorSecurityGateRule extends AbstractDescriptor<FortifySSCSecurityGateRule> {
+		@Override
+		public String getDisplayName() {
+			// TODO Internationalize this
+			return "Security gate rule";
+		}
+		
+		public ComboBoxModel doFillGroupingTypeItems() {
+			final ComboBoxModel items = new ComboBoxModel();
+			items.add("Folder");
+			items.add("Category");
+			items.add("Analysis Type");
+			items.add("Kingdom");
+			items.add("Analysis");
+			return items;
+		}
+		
+		public ComboBoxModel doFillOperatorItems() {
+			final ComboBoxModel items = new ComboBoxModel();
+			items.add("<");
+			items.add("=");
+			items.add(">");
+			return items;
+		}
+	}
+}
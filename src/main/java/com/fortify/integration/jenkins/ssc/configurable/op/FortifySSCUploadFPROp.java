@@ -24,39 +24,63 @@
  ******************************************************************************/
 package com.fortify.integration.jenkins.ssc.configurable.op;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.lang.StringUtils;
 
 import org.jenkinsci.Symbol;
-import org.jenkinsci.remoting.RoleChecker;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
-import com.fortify.client.ssc.api.SSCArtifactAPI;
 import com.fortify.client.ssc.connection.SSCAuthenticatingRestConnection;
 import com.fortify.integration.jenkins.configurable.AbortWithMessageException;
 import com.fortify.integration.jenkins.configurable.ModelHelper;
 import com.fortify.integration.jenkins.ssc.FortifySSCGlobalConfiguration;
+import com.fortify.integration.jenkins.ssc.action.FortifySSCUploadedArtifactsAction;
+import com.fortify.integration.jenkins.ssc.action.FortifySSCUploadedArtifactsAction.UploadedArtifact;
 import com.fortify.integration.jenkins.ssc.configurable.FortifySSCApplicationAndVersionName;
-import com.fortify.util.rest.json.JSONMap;
+import com.fortify.integration.jenkins.ssc.upload.FortifySSCArtifactStatus;
+import com.fortify.integration.jenkins.ssc.upload.FortifySSCArtifactStatusPoller;
+import com.fortify.integration.jenkins.ssc.upload.FortifySSCFPRUploader;
+import com.fortify.integration.jenkins.ssc.upload.FortifySSCFPRUploader.UploadMode;
 
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
-import hudson.FilePath.FileCallable;
-import hudson.Launcher;
-import hudson.model.Run;
-import hudson.model.TaskListener;
-import hudson.remoting.VirtualChannel;
 import hudson.util.ComboBoxModel;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 
 public class FortifySSCUploadFPROp extends AbstractFortifySSCOp {
 	private static final long serialVersionUID = 1L;
+	private static final int DEFAULT_MAX_PARALLEL_UPLOADS = 4;
 	private String fprAntFilter;
 	private String processingTimeOutSeconds;
 	private String autoApprove;
+	// Operations saved by older plugin versions are loaded without calling configureDefaultValuesAfterErrorHandler,
+	// so the properties below may be null; all of them are interpreted such that null means the default value
+	private String uploadMode;
+	private String uploadAllMatches;
+	private String applicationVersionPathPattern;
+	private String maxParallelUploads;
 	
 	/**
 	 * Default constructor
@@ -68,6 +92,9 @@ public class FortifySSCUploadFPROp extends AbstractFortifySSCOp {
 	protected void configureDefaultValuesAfterErrorHandler() {
 		setFprAntFilter("**/*.fpr");
 		setProcessingTimeOutSeconds("600");
+		setUploadMode(UploadMode.AGENT.getDisplayName());
+		setUploadAllMatches("No");
+		setMaxParallelUploads(String.valueOf(DEFAULT_MAX_PARALLEL_UPLOADS));
 	}
 	
 	public String getFprAntFilter() {
@@ -109,49 +136,244 @@ public class FortifySSCUploadFPROp extends AbstractFortifySSCOp {
 		this.autoApprove = autoApprove;
 	}
 
+	public String getUploadMode() {
+		return getExpandedUploadMode(null,null);
+	}
+	
+	private String getExpandedUploadMode(PrintStream log, EnvVars env) {
+		return getExpandedPropertyValueOrDefaultValueIfOverrideDisallowed(log, env, "uploadMode", uploadMode);
+	}
+
+	@DataBoundSetter
+	public void setUploadMode(String uploadMode) {
+		this.uploadMode = uploadMode;
+	}
+
+	public String getUploadAllMatches() {
+		return getExpandedUploadAllMatches(null,null);
+	}
+	
+	private String getExpandedUploadAllMatches(PrintStream log, EnvVars env) {
+		return getExpandedPropertyValueOrDefaultValueIfOverrideDisallowed(log, env, "uploadAllMatches", uploadAllMatches);
+	}
+
+	@DataBoundSetter
+	public void setUploadAllMatches(String uploadAllMatches) {
+		this.uploadAllMatches = uploadAllMatches;
+	}
+
+	public String getApplicationVersionPathPattern() {
+		return getExpandedApplicationVersionPathPattern(null,null);
+	}
+	
+	private String getExpandedApplicationVersionPathPattern(PrintStream log, EnvVars env) {
+		return getExpandedPropertyValueOrDefaultValueIfOverrideDisallowed(log, env, "applicationVersionPathPattern", applicationVersionPathPattern);
+	}
+
+	@DataBoundSetter
+	public void setApplicationVersionPathPattern(String applicationVersionPathPattern) {
+		this.applicationVersionPathPattern = applicationVersionPathPattern;
+	}
+
+	public String getMaxParallelUploads() {
+		return getExpandedMaxParallelUploads(null,null);
+	}
+	
+	private String getExpandedMaxParallelUploads(PrintStream log, EnvVars env) {
+		return getExpandedPropertyValueOrDefaultValueIfOverrideDisallowed(log, env, "maxParallelUploads", maxParallelUploads);
+	}
+
+	@DataBoundSetter
+	public void setMaxParallelUploads(String maxParallelUploads) {
+		this.maxParallelUploads = maxParallelUploads;
+	}
+
 	@Override
-	public void perform(FortifySSCApplicationAndVersionName applicationAndVersionNameJobConfig, Run<?, ?> run,
-			FilePath workspace, Launcher launcher, TaskListener listener) throws InterruptedException, IOException {
-		PrintStream log = listener.getLogger();
-		EnvVars env = run.getEnvironment(listener);
-		SSCAuthenticatingRestConnection conn = FortifySSCGlobalConfiguration.get().conn();
+	public void perform(FortifySSCRunContext context) throws InterruptedException, IOException {
+		PrintStream log = context.getLog();
+		EnvVars env = context.getEnv();
 		
-		final String applicationVersionId = applicationAndVersionNameJobConfig.getApplicationVersionId(log, env);
-		final FilePath fprFilePath = getFPRFilePath(workspace, log, env);
-		//TODO Check really an int
-		final int processingTimeoutSeconds = Integer.parseInt(getExpandedProcessingTimeOutSeconds(log, env));  
-		final String autoApprove = getExpandedAutoApprove(log, env);
+		final List<FilePath> fprFilePaths = getFPRFilePaths(context.getWorkspace(), log, env);
+		final Map<FilePath, String> applicationVersionIds = getApplicationVersionIds(context, fprFilePaths);
+		final UploadSettings settings = new UploadSettings(
+				//TODO Check really an int
+				Integer.parseInt(getExpandedProcessingTimeOutSeconds(log, env)),
+				ModelHelper.isBooleanComboBoxValueTrue(getExpandedAutoApprove(log, env)),
+				UploadMode.fromDisplayName(getExpandedUploadMode(log, env)));
 		
-		final SSCArtifactAPI artifactApi = conn.api(SSCArtifactAPI.class);
-		String artifactId = fprFilePath.act(new FileCallable<String>() {
-			private static final long serialVersionUID = 1L;
-			@Override
-			public void checkRoles(RoleChecker checker) throws SecurityException {}
-
-			@Override
-			public String invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
-				if ( "true".equals(autoApprove) ) {
-					return artifactApi.uploadArtifactAndWaitProcessingCompletionWithApproval(applicationVersionId, f, "Auto-approved by Jenkins", processingTimeoutSeconds);
+		if ( fprFilePaths.size() == 1 ) {
+			FilePath fprFilePath = fprFilePaths.get(0);
+			uploadAndWaitForProcessing(context, fprFilePath, applicationVersionIds.get(fprFilePath), settings);
+		} else {
+			uploadAll(context, applicationVersionIds, settings);
+		}
+	}
+	
+	/**
+	 * Upload all given FPR files, with at most maxParallelUploads uploads and processing
+	 * waits running in parallel. Failures for individual FPR files don't stop other uploads;
+	 * once all uploads have completed, a single exception is thrown describing all failures.
+	 */
+	private void uploadAll(final FortifySSCRunContext context, Map<FilePath, String> applicationVersionIds, final UploadSettings settings) throws InterruptedException {
+		PrintStream log = context.getLog();
+		int maxParallelUploads = getMaxParallelUploads(log, context.getEnv());
+		log.println("[INFO] Uploading "+applicationVersionIds.size()+" FPR files, at most "+maxParallelUploads+" in parallel");
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxParallelUploads, applicationVersionIds.size()),
+				new NamingThreadFactory(new DaemonThreadFactory(), "Fortify SSC FPR upload for "+context.getRun().getFullDisplayName()));
+		try {
+			Map<FilePath, Future<Void>> futures = new LinkedHashMap<>();
+			for ( final Map.Entry<FilePath, String> entry : applicationVersionIds.entrySet() ) {
+				futures.put(entry.getKey(), executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						uploadAndWaitForProcessing(context, entry.getKey(), entry.getValue(), settings);
+						return null;
+					}
+				}));
+			}
+			List<String> failures = new ArrayList<>();
+			for ( Map.Entry<FilePath, Future<Void>> entry : futures.entrySet() ) {
+				try {
+					entry.getValue().get();
+				} catch ( ExecutionException e ) {
+					Throwable cause = e.getCause();
+					if ( cause instanceof InterruptedException ) { throw (InterruptedException)cause; }
+					String message = cause instanceof AbortWithMessageException ? cause.getMessage() : cause.toString();
+					log.println("[ERROR] Upload of "+entry.getKey().getName()+" failed: "+message);
+					failures.add(entry.getKey().getName()+": "+message);
+				}
+			}
+			if ( !failures.isEmpty() ) {
+				throw new AbortWithMessageException("Upload failed for "+failures.size()+" of "+futures.size()+" FPR files: "+StringUtils.join(failures, "; "));
+			}
+			log.println("[INFO] All "+futures.size()+" FPR files uploaded successfully");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void uploadAndWaitForProcessing(FortifySSCRunContext context, FilePath fprFilePath, String applicationVersionId, UploadSettings settings) throws IOException, InterruptedException {
+		PrintStream log = context.getLog();
+		SSCAuthenticatingRestConnection conn = context.getConnection();
+		// Only the upload token is sent to the agent; see FortifySSCFPRUploader
+		FortifySSCFPRUploader uploader = new FortifySSCFPRUploader(conn);
+		String artifactId = uploader.upload(log, fprFilePath, applicationVersionId, settings.uploadMode);
+		FortifySSCUploadedArtifactsAction.record(context.getRun(), new UploadedArtifact(applicationVersionId, artifactId, fprFilePath.getName(), settings.autoApprove));
+		if ( settings.processingTimeoutSeconds>0 ) {
+			FortifySSCArtifactStatus status = waitForProcessingCompletion(log, applicationVersionId, artifactId, settings.processingTimeoutSeconds, settings.autoApprove);
+			if ( status != FortifySSCArtifactStatus.PROCESS_COMPLETE ) {
+				throw new AbortWithMessageException("Artifact "+fprFilePath.getName()+" was uploaded but not processed");
+			}
+		} else {
+			log.println("[INFO] Not waiting for processing of artifact "+artifactId+"; pipeline jobs can use the sscWaitForProcessing step to wait without blocking an executor");
+		}
+	}
+	
+	/**
+	 * Wait until SSC has processed the given artifact, approving the artifact if necessary
+	 * and autoApprove is enabled. Artifact status is polled by the controller-wide 
+	 * {@link FortifySSCArtifactStatusPoller}.
+	 * @return Artifact status, or {@link FortifySSCArtifactStatus#PROCESSING} if processing didn't complete within the time-out
+	 */
+	private FortifySSCArtifactStatus waitForProcessingCompletion(PrintStream log, String applicationVersionId, String artifactId, int processingTimeoutSeconds, boolean autoApprove) throws InterruptedException, IOException {
+		Future<FortifySSCArtifactStatus> future = FortifySSCGlobalConfiguration.get().getArtifactStatusPoller()
+				.register(log, applicationVersionId, artifactId, autoApprove);
+		try {
+			return future.get(processingTimeoutSeconds, TimeUnit.SECONDS);
+		} catch ( TimeoutException e ) {
+			return FortifySSCArtifactStatus.PROCESSING;
+		} catch ( ExecutionException e ) {
+			throw new IOException("Error waiting for artifact processing", e.getCause());
+		} finally {
+			future.cancel(false);
+		}
+	}
+
+	/**
+	 * Get the application version id for every given FPR file. If an application version path 
+	 * pattern has been configured, the application and version name are taken from the 
+	 * applicationName and versionName groups in that pattern, matched against the FPR path 
+	 * relative to the workspace. Any missing names are taken from the job configuration.
+	 */
+	private Map<FilePath, String> getApplicationVersionIds(FortifySSCRunContext context, List<FilePath> fprFilePaths) {
+		PrintStream log = context.getLog();
+		EnvVars env = context.getEnv();
+		String pathPattern = getExpandedApplicationVersionPathPattern(log, env);
+		Map<FilePath, String> result = new LinkedHashMap<>();
+		if ( StringUtils.isBlank(pathPattern) ) {
+			String applicationVersionId = context.getApplicationVersionId();
+			for ( FilePath fprFilePath : fprFilePaths ) {
+				result.put(fprFilePath, applicationVersionId);
+			}
+		} else {
+			Pattern pattern = compilePattern(pathPattern);
+			FortifySSCApplicationAndVersionName jobConfig = context.getApplicationAndVersionNameJobConfig();
+			String workspace = context.getWorkspace().getRemote();
+			for ( FilePath fprFilePath : fprFilePaths ) {
+				String relativePath = StringUtils.removeStart(StringUtils.removeStart(fprFilePath.getRemote(), workspace).replace('\\', '/'), "/");
+				Matcher matcher = pattern.matcher(relativePath);
+				if ( !matcher.matches() ) {
+					log.println("[INFO] "+relativePath+" doesn't match application version path pattern; using configured application version");
+					result.put(fprFilePath, context.getApplicationVersionId());
 				} else {
-					return artifactApi.uploadArtifactAndWaitProcessingCompletion(applicationVersionId, f, processingTimeoutSeconds);
+					String applicationName = StringUtils.defaultIfBlank(getGroup(matcher, "applicationName"), jobConfig.getExpandedApplicationName(log, env));
+					String versionName = StringUtils.defaultIfBlank(getGroup(matcher, "versionName"), jobConfig.getExpandedVersionName(log, env));
+					log.println("[INFO] Uploading "+relativePath+" to application version "+applicationName+":"+versionName);
+					result.put(fprFilePath, FortifySSCApplicationAndVersionName.getApplicationVersionId(applicationName, versionName));
 				}
 			}
-		});
-		JSONMap artifact = artifactApi.getArtifactById(artifactId, true);
-		if ( processingTimeoutSeconds>0 && !"PROCESS_COMPLETE".equals(artifact.get("status")) ) {
-			throw new AbortWithMessageException("Artifact was uploaded but not processed");
+		}
+		return result;
+	}
+	
+	private static Pattern compilePattern(String pathPattern) {
+		try {
+			return Pattern.compile(pathPattern);
+		} catch ( PatternSyntaxException e ) {
+			throw new AbortWithMessageException("Invalid application version path pattern: "+e.getMessage());
 		}
 	}
 
-	private FilePath getFPRFilePath(FilePath workspace, PrintStream log, EnvVars env) throws IOException, InterruptedException {
+	private static String getGroup(Matcher matcher, String groupName) {
+		try {
+			return matcher.group(groupName);
+		} catch ( IllegalArgumentException e ) {
+			// Pattern doesn't define this group
+			return null;
+		}
+	}
+	
+	private int getMaxParallelUploads(PrintStream log, EnvVars env) {
+		String maxParallelUploads = getExpandedMaxParallelUploads(log, env);
+		if ( StringUtils.isBlank(maxParallelUploads) ) { return DEFAULT_MAX_PARALLEL_UPLOADS; }
+		try {
+			return Math.max(1, Integer.parseInt(maxParallelUploads));
+		} catch ( NumberFormatException e ) {
+			throw new AbortWithMessageException("Invalid maximum number of parallel uploads: "+maxParallelUploads);
+		}
+	}
+
+	private List<FilePath> getFPRFilePaths(FilePath workspace, PrintStream log, EnvVars env) throws IOException, InterruptedException {
 		String fprAntFilter = getExpandedFprAntFilter(log, env);
 		FilePath[] list = workspace.list(fprAntFilter);
 		if ( list.length == 0 ) {
 			throw new AbortWithMessageException("No FPR file found with filter '"+fprAntFilter+"'");
-		} else if ( list.length > 1 ) {
+		} else if ( list.length > 1 && !ModelHelper.isBooleanComboBoxValueTrue(getExpandedUploadAllMatches(log, env)) ) {
 			throw new AbortWithMessageException("More than 1 FPR file found with filter '"+fprAntFilter+"': "+Arrays.toString(list));
 		} else {
-			return list[0];
+			return Arrays.asList(list);
+		}
+	}
+	
+	private static final class UploadSettings {
+		private final int processingTimeoutSeconds;
+		private final boolean autoApprove;
+		private final UploadMode uploadMode;
+		
+		public UploadSettings(int processingTimeoutSeconds, boolean autoApprove, UploadMode uploadMode) {
+			this.processingTimeoutSeconds = processingTimeoutSeconds;
+			this.autoApprove = autoApprove;
+			this.uploadMode = uploadMode;
 		}
 	}
 	
@@ -171,8 +393,26 @@ public class FortifySSCUploadFPROp extends AbstractFortifySSCOp {
 			return 200;
 		}
 		
+		/** Uploading an FPR file requires the application version to have been created */
+		@Override
+		public Collection<Class<? extends AbstractFortifySSCOp>> getDependencies() {
+			return Collections.<Class<? extends AbstractFortifySSCOp>>singleton(FortifySSCCreateApplicationVersionOp.class);
+		}
+		
 		public ComboBoxModel doFillAutoApproveItems() {
 			return ModelHelper.createBooleanComboBoxModel();
 		}
+		
+		public ComboBoxModel doFillUploadAllMatchesItems() {
+			return ModelHelper.createBooleanComboBoxModel();
+		}
+		
+		public ComboBoxModel doFillUploadModeItems() {
+			final ComboBoxModel items = new ComboBoxModel();
+			for ( UploadMode mode : UploadMode.values() ) {
+				items.add(mode.getDisplayName());
+			}
+			return items;
+		}
     }
 }
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.connection;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+
+import com.fortify.client.ssc.connection.SSCAuthenticatingRestConnection;
+
+/**
+ * <p>This class manages the {@link SSCAuthenticatingRestConnection} instance that is
+ * shared by all builds. All connections created by this class use a single, bounded
+ * pool of keep-alive HTTP connections, such that builds don't need to set up a new
+ * TCP/TLS connection for every request to SSC.</p>
+ *
+ * <p>The shared connection is published through a single volatile reference to an
+ * immutable holder, so concurrent builds always see a fully initialized connection
+ * for the currently configured SSC URL. Connections are only rebuilt if the SSC URL
+ * changes, or if the authentication token managed by {@link FortifySSCTokenCache} has been 
+ * refreshed. As the connection pool is shared, rebuilding a connection is cheap.</p>
+ *
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCConnectionManager {
+	public static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 100;
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 50;
+	public static final int DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS = 60;
+	private static final int CONNECTION_TIME_TO_LIVE_MINUTES = 15;
+	private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+
+	private final PoolingHttpClientConnectionManager pool;
+	private final FortifySSCTokenCache tokenCache;
+	private volatile int idleConnectionTimeoutSeconds = DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS;
+	private volatile ConnectionHolder connectionHolder;
+
+	public FortifySSCConnectionManager() {
+		this.pool = new PoolingHttpClientConnectionManager(CONNECTION_TIME_TO_LIVE_MINUTES, TimeUnit.MINUTES);
+		this.pool.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+		this.tokenCache = new FortifySSCTokenCache(getConnectionProperties());
+		configure(DEFAULT_MAX_CONNECTIONS_TOTAL, DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS);
+	}
+
+	/**
+	 * Update the connection pool limits. This can safely be called while
+	 * builds are using the pool; existing connections will be closed or
+	 * added as necessary.
+	 *
+	 * @param maxConnectionsTotal Maximum number of pooled connections
+	 * @param maxConnectionsPerRoute Maximum number of pooled connections to a single SSC host
+	 * @param idleConnectionTimeoutSeconds Number of seconds after which idle connections are evicted
+	 */
+	public void configure(int maxConnectionsTotal, int maxConnectionsPerRoute, int idleConnectionTimeoutSeconds) {
+		pool.setMaxTotal(maxConnectionsTotal>0 ? maxConnectionsTotal : DEFAULT_MAX_CONNECTIONS_TOTAL);
+		pool.setDefaultMaxPerRoute(maxConnectionsPerRoute>0 ? maxConnectionsPerRoute : DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+		this.idleConnectionTimeoutSeconds = idleConnectionTimeoutSeconds>0 ? idleConnectionTimeoutSeconds : DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS;
+	}
+
+	/**
+	 * Get the shared connection for the given SSC URL. The connection is
+	 * created upon first invocation, and re-created only if the given
+	 * SSC URL or the cached authentication token differs from the values
+	 * used to create the current connection.
+	 *
+	 * @param sscUrl SSC URL, including credentials
+	 * @return Shared {@link SSCAuthenticatingRestConnection} instance, or null if sscUrl is blank
+	 */
+	public SSCAuthenticatingRestConnection getConnection(String sscUrl) {
+		if ( StringUtils.isBlank(sscUrl) ) { return null; }
+		String effectiveUrl = tokenCache.getTokenUrl(sscUrl);
+		ConnectionHolder current = this.connectionHolder;
+		if ( current == null || !current.isForUrl(effectiveUrl) ) {
+			synchronized (this) {
+				current = this.connectionHolder;
+				if ( current == null || !current.isForUrl(effectiveUrl) ) {
+					current = new ConnectionHolder(effectiveUrl, createConnection(effectiveUrl));
+					this.connectionHolder = current;
+				}
+			}
+		}
+		return current.getConnection();
+	}
+
+	/**
+	 * Create a new, unshared connection for the given SSC URL. The new
+	 * connection uses the shared connection pool, but will not replace
+	 * the connection returned by {@link #getConnection(String)}. This is
+	 * mostly useful for testing connections to an SSC URL that hasn't
+	 * been saved yet.
+	 *
+	 * @param sscUrl SSC URL, including credentials
+	 * @return New {@link SSCAuthenticatingRestConnection} instance
+	 */
+	public SSCAuthenticatingRestConnection createConnection(String sscUrl) {
+		return SSCAuthenticatingRestConnection.builder().baseUrl(sscUrl)
+				.connectionProperties(getConnectionProperties()).build();
+	}
+
+	/**
+	 * Get the Jersey client properties for using our shared connection pool.
+	 * The pool is marked as shared, so it won't be shut down if a Jersey client
+	 * using this pool is closed.
+	 *
+	 * @return Jersey client properties
+	 */
+	public Map<String, Object> getConnectionProperties() {
+		Map<String, Object> result = new HashMap<>();
+		result.put(ApacheClientProperties.CONNECTION_MANAGER, pool);
+		result.put(ApacheClientProperties.CONNECTION_MANAGER_SHARED, true);
+		return result;
+	}
+
+	/**
+	 * Invalidate the cached authentication token, for example because SSC
+	 * responded with HTTP 401. The next call to {@link #getConnection(String)}
+	 * will return a connection with a newly generated token.
+	 * @return true if a cached token was invalidated (so retrying makes sense), false otherwise
+	 */
+	public boolean invalidateToken() {
+		return tokenCache.invalidate();
+	}
+	
+	public FortifySSCTokenCache getTokenCache() {
+		return tokenCache;
+	}
+
+	/**
+	 * Close expired connections, and connections that have been idle
+	 * for longer than the configured idle connection time-out.
+	 */
+	public void evictIdleConnections() {
+		pool.closeExpiredConnections();
+		pool.closeIdleConnections(idleConnectionTimeoutSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @return Statistics for the shared connection pool
+	 */
+	public PoolStats getStatistics() {
+		return pool.getTotalStats();
+	}
+
+	/**
+	 * Immutable holder for the shared connection and the URL
+	 * that was used to create it.
+	 */
+	private static final class ConnectionHolder {
+		private final String sscUrl;
+		private final SSCAuthenticatingRestConnection connection;
+
+		public ConnectionHolder(String sscUrl, SSCAuthenticatingRestConnection connection) {
+			this.sscUrl = sscUrl;
+			this.connection = connection;
+		}
+
+		public boolean isForUrl(String sscUrl) {
+			return this.sscUrl.equals(sscUrl);
+		}
+
+		public SSCAuthenticatingRestConnection getConnection() {
+			return connection;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.connection;
+
+import com.fortify.integration.jenkins.configurable.AbortWithMessageException;
+
+/**
+ * {@link AbortWithMessageException} for SSC requests that are not executed through the 
+ * REST connection, for example FPR uploads, such that the HTTP status code returned by 
+ * SSC can be checked using {@link FortifySSCHttpStatusHelper}. Contrary to the JAX-RS 
+ * exceptions thrown by the REST connection, this exception can be safely sent from
+ * an agent to the controller.
+ * 
+ * @author Ruud Senden
+ *
+ */
+public class FortifySSCHttpStatusException extends AbortWithMessageException {
+	private static final long serialVersionUID = 1L;
+	private final int status;
+
+	public FortifySSCHttpStatusException(String message, int status) {
+		super(message);
+		this.status = status;
+	}
+
+	/**
+	 * @return HTTP status code returned by SSC
+	 */
+	public int getStatus() {
+		return status;
+	}
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.connection;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+/**
+ * Simple helper class for checking whether an exception was caused 
+ * by SSC returning a specific HTTP status code.
+ * 
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCHttpStatusHelper {
+	private FortifySSCHttpStatusHelper() {}
+	
+	/**
+	 * Check whether the given exception, or any of its causes, represents
+	 * an HTTP response with the given status code.
+	 * @param e Exception to check
+	 * @param status HTTP status code
+	 * @return true if the given exception was caused by an HTTP response with the given status code, false otherwise
+	 */
+	public static final boolean hasStatus(Throwable e, int status) {
+		for ( Throwable current = e ; current != null ; current = current.getCause() ) {
+			if ( current instanceof FortifySSCHttpStatusException && ((FortifySSCHttpStatusException)current).getStatus()==status ) {
+				return true;
+			}
+			if ( current instanceof WebApplicationException ) {
+				Response response = ((WebApplicationException)current).getResponse();
+				if ( response != null && response.getStatus()==status ) { return true; }
+			}
+			if ( current.getCause() == current ) { break; }
+		}
+		return false;
+	}
+	
+	public static final boolean isUnauthorized(Throwable e) {
+		return hasStatus(e, Response.Status.UNAUTHORIZED.getStatusCode());
+	}
+	
+	public static final boolean isNotFound(Throwable e) {
+		return hasStatus(e, Response.Status.NOT_FOUND.getStatusCode());
+	}
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.connection;
+
+import java.util.concurrent.TimeUnit;
+
+import com.fortify.integration.jenkins.ssc.FortifySSCGlobalConfiguration;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+
+/**
+ * This {@link PeriodicWork} implementation periodically evicts expired and idle
+ * connections from the connection pool managed by {@link FortifySSCConnectionManager}.
+ *
+ * @author Ruud Senden
+ *
+ */
+@Extension
+public class FortifySSCIdleConnectionEvictor extends PeriodicWork {
+	@Override
+	public long getRecurrencePeriod() {
+		return TimeUnit.SECONDS.toMillis(30);
+	}
+
+	@Override
+	protected void doRun() throws Exception {
+		FortifySSCGlobalConfiguration globalConfiguration = FortifySSCGlobalConfiguration.get();
+		if ( globalConfiguration != null ) {
+			globalConfiguration.getConnectionManager().evictIdleConnections();
+		}
+	}
+}
@@ -0,0 +1,348 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.connection;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.MediaType;
+
+import org.apache.commons.lang.StringUtils;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
+
+import com.fortify.integration.jenkins.configurable.AbortWithMessageException;
+
+import jenkins.util.Timer;
+import net.sf.json.JSONObject;
+
+/**
+ * <p>Controller-wide cache for SSC authentication tokens. If the SSC URL contains
+ * user name and password, this class will use these credentials to generate a
+ * single UnifiedLoginToken that is shared by all builds, instead of having every
+ * connection authenticate on its own.</p>
+ *
+ * <p>Tokens are refreshed in the background before they expire, and at most a single
+ * refresh will be in progress at any time; concurrent callers that need a new token
+ * will wait for the refresh that is already in progress. Callers can invalidate a
+ * token that was rejected by SSC by calling {@link #invalidate()}.</p>
+ *
+ * <p>Tokens that have been replaced or invalidated are deleted from SSC, to avoid
+ * accumulating live tokens on SSC. Replaced tokens are deleted after a grace period,
+ * allowing requests that are still using the replaced token to complete.</p>
+ *
+ * <p>SSC URL's that already contain an authentication token (authToken:[token]@host)
+ * are used as-is.</p>
+ *
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCTokenCache {
+	private static final Logger LOG = Logger.getLogger(FortifySSCTokenCache.class.getName());
+	private static final String AUTH_TOKEN_USER = "authToken";
+	private static final String TOKEN_REQUEST = "{\"type\":\"UnifiedLoginToken\",\"description\":\"Generated by Fortify Jenkins plugin\"}";
+	private static final long REFRESH_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+	private static final long DEFAULT_TOKEN_LIFETIME_MILLIS = TimeUnit.MINUTES.toMillis(30);
+	private static final long REVOKE_GRACE_PERIOD_MILLIS = TimeUnit.MINUTES.toMillis(5);
+	/** ISO 8601 date/time, with an optional offset in any of the forms 'Z', '+01', '+0100' or '+01:00'; UTC if no offset is specified */
+	private static final DateTimeFormatter TERMINAL_DATE_FORMAT = new DateTimeFormatterBuilder()
+			.append(DateTimeFormatter.ISO_LOCAL_DATE_TIME)
+			.appendPattern("[XXX][XX][X]")
+			.parseDefaulting(ChronoField.OFFSET_SECONDS, 0)
+			.toFormatter();
+
+	private final Map<String, Object> connectionProperties;
+	private final AtomicReference<CompletableFuture<Token>> refreshInProgress = new AtomicReference<>();
+	private final AtomicLong mintCount = new AtomicLong();
+	private final AtomicLong reuseCount = new AtomicLong();
+	private volatile Token currentToken;
+
+	/**
+	 * Create a new token cache
+	 * @param connectionProperties Jersey client properties, used to share the connection pool for token requests
+	 */
+	public FortifySSCTokenCache(Map<String, Object> connectionProperties) {
+		this.connectionProperties = connectionProperties;
+	}
+
+	/**
+	 * @param sscUrl SSC URL to be checked
+	 * @return true if the given SSC URL contains user name and password, false otherwise
+	 */
+	public static boolean isUserCredentialsUrl(String sscUrl) {
+		String[] userAndPassword = getUserAndPassword(sscUrl);
+		return userAndPassword != null && !AUTH_TOKEN_USER.equals(userAndPassword[0]);
+	}
+
+	/**
+	 * Get the SSC URL to use for connecting to SSC. If the given SSC URL contains
+	 * user credentials, this method returns an SSC URL containing a cached
+	 * authentication token instead. Otherwise, the given SSC URL is returned as-is.
+	 *
+	 * @param sscUrl Configured SSC URL
+	 * @return SSC URL to use for connecting to SSC
+	 */
+	public String getTokenUrl(String sscUrl) {
+		if ( !isUserCredentialsUrl(sscUrl) ) { return sscUrl; }
+		URI uri = toURI(sscUrl);
+		return uri.getScheme()+"://"+AUTH_TOKEN_USER+":"+getToken(sscUrl)+"@"+uri.getRawAuthority().substring(uri.getRawAuthority().indexOf('@')+1)
+			+ StringUtils.defaultString(uri.getRawPath());
+	}
+
+	private String getToken(String sscUrl) {
+		Token token = currentToken;
+		if ( token != null && token.isValidFor(sscUrl) ) {
+			reuseCount.incrementAndGet();
+			if ( token.isExpiringSoon() ) { refreshInBackground(sscUrl); }
+			return token.getValue();
+		}
+		try {
+			return refresh(sscUrl).join().getValue();
+		} catch ( CompletionException e ) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : e;
+		}
+	}
+
+	/**
+	 * Invalidate the current token, for example because SSC responded with
+	 * HTTP 401. The next call to {@link #getTokenUrl(String)} will generate
+	 * a new token. The invalidated token is deleted from SSC.
+	 * @return true if a cached token was invalidated, false otherwise
+	 */
+	public boolean invalidate() {
+		Token token = currentToken;
+		currentToken = null;
+		revokeLater(token, 0);
+		return token != null;
+	}
+
+	public long getMintCount() {
+		return mintCount.get();
+	}
+
+	public long getReuseCount() {
+		return reuseCount.get();
+	}
+
+	private void refreshInBackground(final String sscUrl) {
+		if ( refreshInProgress.get() == null ) {
+			Timer.get().submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						// Skip if another background refresh already replaced the token 
+						Token token = currentToken;
+						if ( token == null || token.isExpiringSoon() ) {
+							refresh(sscUrl).join();
+						}
+					} catch ( RuntimeException e ) {
+						LOG.log(Level.WARNING, "Error refreshing SSC authentication token", e);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Generate a new token, unless a refresh is already in progress, in which case
+	 * the result of the refresh in progress is returned.
+	 */
+	private CompletableFuture<Token> refresh(String sscUrl) {
+		CompletableFuture<Token> future = new CompletableFuture<>();
+		while ( !refreshInProgress.compareAndSet(null, future) ) {
+			CompletableFuture<Token> existing = refreshInProgress.get();
+			if ( existing != null ) { return existing; }
+		}
+		try {
+			Token token = mint(sscUrl);
+			Token previous = currentToken;
+			currentToken = token;
+			scheduleRefresh(sscUrl, token);
+			revokeLater(previous, REVOKE_GRACE_PERIOD_MILLIS);
+			future.complete(token);
+		} catch ( RuntimeException e ) {
+			future.completeExceptionally(e);
+		} finally {
+			refreshInProgress.set(null);
+		}
+		return future;
+	}
+
+	private void scheduleRefresh(final String sscUrl, final Token token) {
+		long delay = Math.max(0, token.getExpiresAtMillis()-REFRESH_MARGIN_MILLIS-System.currentTimeMillis());
+		Timer.get().schedule(new Runnable() {
+			@Override
+			public void run() {
+				// Only refresh if the token hasn't been replaced or invalidated in the meantime
+				if ( currentToken == token ) { refreshInBackground(sscUrl); }
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private Token mint(String sscUrl) {
+		Client client = createClient(sscUrl);
+		try {
+			String response = client.target(getBaseUrl(sscUrl)).path("api/v1/tokens")
+				.request(MediaType.APPLICATION_JSON_TYPE)
+				.post(Entity.entity(TOKEN_REQUEST, MediaType.APPLICATION_JSON_TYPE), String.class);
+			JSONObject data = JSONObject.fromObject(response).getJSONObject("data");
+			mintCount.incrementAndGet();
+			return new Token(sscUrl, data.optString("id"), data.getString("token"), getExpiresAtMillis(data.optString("terminalDate")));
+		} finally {
+			client.close();
+		}
+	}
+
+	/**
+	 * Delete the given token from SSC after the given delay; this is ignored if the given
+	 * token is null or its id is unknown.
+	 */
+	private void revokeLater(final Token token, long delayMillis) {
+		if ( token == null || StringUtils.isBlank(token.id) ) { return; }
+		Timer.get().schedule(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					revoke(token);
+				} catch ( RuntimeException e ) {
+					LOG.log(Level.WARNING, "Error deleting SSC authentication token "+token.id, e);
+				}
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void revoke(Token token) {
+		Client client = createClient(token.sscUrl);
+		try {
+			client.target(getBaseUrl(token.sscUrl)).path("api/v1/tokens").path(token.id)
+				.request(MediaType.APPLICATION_JSON_TYPE)
+				.delete(String.class);
+		} finally {
+			client.close();
+		}
+	}
+
+	/**
+	 * Create a client that authenticates with the user credentials contained in the given SSC URL
+	 */
+	private Client createClient(String sscUrl) {
+		String[] userAndPassword = getUserAndPassword(sscUrl);
+		ClientConfig clientConfig = new ClientConfig().connectorProvider(new ApacheConnectorProvider());
+		for ( Map.Entry<String, Object> property : connectionProperties.entrySet() ) {
+			clientConfig.property(property.getKey(), property.getValue());
+		}
+		clientConfig.register(HttpAuthenticationFeature.basic(userAndPassword[0], userAndPassword[1]));
+		return ClientBuilder.newClient(clientConfig);
+	}
+
+	/**
+	 * @return Given SSC URL without user credentials
+	 */
+	private static String getBaseUrl(String sscUrl) {
+		URI uri = toURI(sscUrl);
+		return uri.getScheme()+"://"+uri.getHost()+(uri.getPort()==-1?"":":"+uri.getPort())+StringUtils.defaultString(uri.getRawPath());
+	}
+
+	private static long getExpiresAtMillis(String terminalDate) {
+		if ( StringUtils.isNotBlank(terminalDate) ) {
+			try {
+				return OffsetDateTime.parse(terminalDate, TERMINAL_DATE_FORMAT).toInstant().toEpochMilli();
+			} catch (DateTimeParseException e) {
+				LOG.log(Level.WARNING, "Cannot parse token terminal date "+terminalDate+", assuming default token lifetime", e);
+			}
+		}
+		return System.currentTimeMillis()+DEFAULT_TOKEN_LIFETIME_MILLIS;
+	}
+
+	private static String[] getUserAndPassword(String sscUrl) {
+		String userInfo = StringUtils.isBlank(sscUrl) ? null : toURI(sscUrl).getRawUserInfo();
+		if ( userInfo == null || !userInfo.contains(":") ) { return null; }
+		try {
+			return new String[] {
+				URLDecoder.decode(StringUtils.substringBefore(userInfo, ":"), "UTF-8"),
+				URLDecoder.decode(StringUtils.substringAfter(userInfo, ":"), "UTF-8")
+			};
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 encoding not supported", e);
+		}
+	}
+
+	private static URI toURI(String sscUrl) {
+		try {
+			return new URI(sscUrl);
+		} catch (URISyntaxException e) {
+			throw new AbortWithMessageException("Invalid SSC URL: "+e.getMessage());
+		}
+	}
+
+	private static final class Token {
+		private final String sscUrl;
+		private final String id;
+		private final String value;
+		private final long expiresAtMillis;
+
+		public Token(String sscUrl, String id, String value, long expiresAtMillis) {
+			this.sscUrl = sscUrl;
+			this.id = id;
+			this.value = value;
+			this.expiresAtMillis = expiresAtMillis;
+		}
+
+		public boolean isValidFor(String sscUrl) {
+			return this.sscUrl.equals(sscUrl) && System.currentTimeMillis() < expiresAtMillis;
+		}
+
+		public boolean isExpiringSoon() {
+			return System.currentTimeMillis() > expiresAtMillis-REFRESH_MARGIN_MILLIS;
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+		public long getExpiresAtMillis() {
+			return expiresAtMillis;
+		}
+	}
+}
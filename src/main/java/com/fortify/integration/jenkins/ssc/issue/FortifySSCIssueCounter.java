@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.issue;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.client.WebTarget;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.fortify.client.ssc.connection.SSCAuthenticatingRestConnection;
+import com.fortify.integration.jenkins.configurable.AbortWithMessageException;
+import com.fortify.util.rest.json.JSONMap;
+
+/**
+ * <p>Helper class for counting issues on SSC. Instead of retrieving the matching
+ * issues and counting them on the client, this class requests a single issue 
+ * (limit=1) and reads the total number of matching issues from the 'count' 
+ * property in SSC's paging metadata. As such, the cost of counting issues 
+ * doesn't depend on the number of matching issues.</p>
+ * 
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCIssueCounter {
+	private FortifySSCIssueCounter() {}
+	
+	/**
+	 * Count the issues in the given application version that match the given search string
+	 * @param conn {@link SSCAuthenticatingRestConnection} used to query SSC
+	 * @param applicationVersionId Application version id
+	 * @param searchString Optional SSC issue search string
+	 * @return Number of matching issues
+	 */
+	public static int countIssues(SSCAuthenticatingRestConnection conn, String applicationVersionId, String searchString) {
+		WebTarget target = conn.getBaseResource()
+				.path("api/v1/projectVersions").path(applicationVersionId).path("issues")
+				.queryParam("start", "0").queryParam("limit", "1").queryParam("fields", "id");
+		if ( StringUtils.isNotBlank(searchString) ) {
+			target = target.queryParam("q", searchString).queryParam("qm", "issues");
+		}
+		JSONMap response = conn.executeRequest(HttpMethod.GET, target, JSONMap.class, false);
+		Integer count = response.get("count", Integer.class);
+		if ( count == null ) {
+			throw new AbortWithMessageException("SSC didn't return an issue count for application version "+applicationVersionId);
+		}
+		return count;
+	}
+}
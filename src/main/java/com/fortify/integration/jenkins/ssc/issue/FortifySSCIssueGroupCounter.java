@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.issue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.client.WebTarget;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.fortify.client.ssc.connection.SSCAuthenticatingRestConnection;
+import com.fortify.integration.jenkins.configurable.AbortWithMessageException;
+import com.fortify.util.rest.json.JSONList;
+import com.fortify.util.rest.json.JSONMap;
+
+/**
+ * <p>This class retrieves issue counts per issue group for a single application version,
+ * optionally using a specific SSC filter set. Group counts for a given grouping type
+ * (for example 'Folder' or 'Category') are retrieved with a single issueGroups request,
+ * and cached for the lifetime of this instance, so any number of checks on the same
+ * grouping type only cost a single request. Counts for different grouping types
+ * may be retrieved in parallel by multiple threads.</p>
+ * 
+ * <p>Grouping types can be specified by either display name or GUID, and group names
+ * are matched case-insensitively.</p>
+ * 
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCIssueGroupCounter {
+	private final SSCAuthenticatingRestConnection conn;
+	private final String applicationVersionId;
+	private final String filterSetName;
+	private final ConcurrentMap<String, Map<String, Integer>> groupCountsByGroupingType = new ConcurrentHashMap<>();
+	private Map<String, String> groupingTypeGuidsByName;
+	private String filterSetGuid;
+	
+	/**
+	 * Create a new instance
+	 * @param conn {@link SSCAuthenticatingRestConnection} used to query SSC
+	 * @param applicationVersionId Application version id
+	 * @param filterSetName Optional filter set title; if blank, the default filter set is used
+	 */
+	public FortifySSCIssueGroupCounter(SSCAuthenticatingRestConnection conn, String applicationVersionId, String filterSetName) {
+		this.conn = conn;
+		this.applicationVersionId = applicationVersionId;
+		this.filterSetName = filterSetName;
+	}
+	
+	/**
+	 * Get the number of visible issues in the given group
+	 * @param groupingType Grouping type display name or GUID
+	 * @param groupName Group name
+	 * @return Number of issues in the given group, or 0 if there are no issues in this group
+	 */
+	public int getCount(String groupingType, String groupName) {
+		Integer result = getGroupCounts(groupingType).get(groupName);
+		return result == null ? 0 : result;
+	}
+	
+	/**
+	 * Get the number of visible issues for every group of the given grouping type
+	 * @param groupingType Grouping type display name or GUID
+	 * @return Unmodifiable map from group name to issue count, sorted and looked up case-insensitively
+	 */
+	public Map<String, Integer> getGroupCounts(String groupingType) {
+		String groupingTypeGuid = getGroupingTypeGuid(groupingType);
+		Map<String, Integer> result = groupCountsByGroupingType.get(groupingTypeGuid);
+		if ( result == null ) {
+			result = Collections.unmodifiableMap(queryGroupCounts(groupingTypeGuid));
+			Map<String, Integer> existing = groupCountsByGroupingType.putIfAbsent(groupingTypeGuid, result);
+			if ( existing != null ) { result = existing; }
+		}
+		return result;
+	}
+	
+	/**
+	 * @param groupingType Grouping type display name or GUID
+	 * @return true if the given grouping type is available for this application version, false otherwise
+	 */
+	public boolean isGroupingTypeAvailable(String groupingType) {
+		return getGroupingTypeGuidsByName().containsKey(StringUtils.lowerCase(groupingType));
+	}
+
+	private Map<String, Integer> queryGroupCounts(String groupingTypeGuid) {
+		WebTarget target = getApplicationVersionTarget().path("issueGroups")
+				.queryParam("groupingtype", groupingTypeGuid).queryParam("qm", "issues");
+		String filterSetGuid = getFilterSetGuid();
+		if ( filterSetGuid != null ) {
+			target = target.queryParam("filterset", filterSetGuid);
+		}
+		Map<String, Integer> result = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		for ( JSONMap group : getData(target) ) {
+			Integer count = group.get("visibleCount", Integer.class);
+			if ( count == null ) { count = group.get("totalCount", Integer.class); }
+			String name = StringUtils.defaultIfBlank(group.get("cleanName", String.class), group.get("id", String.class));
+			if ( name != null && count != null ) {
+				result.put(name, count);
+			}
+		}
+		return result;
+	}
+	
+	private String getGroupingTypeGuid(String groupingType) {
+		String result = getGroupingTypeGuidsByName().get(StringUtils.lowerCase(groupingType));
+		if ( result == null ) {
+			throw new AbortWithMessageException("Unknown issue grouping type '"+groupingType+"'");
+		}
+		return result;
+	}
+	
+	private synchronized Map<String, String> getGroupingTypeGuidsByName() {
+		if ( groupingTypeGuidsByName == null ) {
+			Map<String, String> guidsByName = new HashMap<>();
+			JSONMap issueSelectorSet = conn.executeRequest(HttpMethod.GET, getApplicationVersionTarget().path("issueSelectorSet")
+					.queryParam("fields", "groupBySet"), JSONMap.class, false).get("data", JSONMap.class);
+			JSONList groupBySet = issueSelectorSet == null ? null : issueSelectorSet.get("groupBySet", JSONList.class);
+			if ( groupBySet != null ) {
+				for ( JSONMap groupBy : groupBySet.asValueType(JSONMap.class) ) {
+					String guid = groupBy.get("guid", String.class);
+					guidsByName.put(StringUtils.lowerCase(groupBy.get("displayName", String.class)), guid);
+					guidsByName.put(StringUtils.lowerCase(guid), guid);
+				}
+			}
+			groupingTypeGuidsByName = guidsByName;
+		}
+		return groupingTypeGuidsByName;
+	}
+	
+	private synchronized String getFilterSetGuid() {
+		if ( filterSetGuid == null && StringUtils.isNotBlank(filterSetName) ) {
+			for ( JSONMap filterSet : getData(getApplicationVersionTarget().path("filterSets")) ) {
+				if ( filterSetName.equalsIgnoreCase(filterSet.get("title", String.class)) ) {
+					filterSetGuid = filterSet.get("guid", String.class);
+				}
+			}
+			if ( filterSetGuid == null ) {
+				throw new AbortWithMessageException("Filter set '"+filterSetName+"' not found");
+			}
+		}
+		return filterSetGuid;
+	}
+	
+	private WebTarget getApplicationVersionTarget() {
+		return conn.getBaseResource().path("api/v1/projectVersions").path(applicationVersionId);
+	}
+	
+	private Iterable<JSONMap> getData(WebTarget target) {
+		JSONList data = conn.executeRequest(HttpMethod.GET, target.queryParam("limit", "-1"), JSONMap.class, false).get("data", JSONList.class);
+		return data == null ? Collections.<JSONMap>emptyList() : data.asValueType(JSONMap.class);
+	}
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.issue;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.client.WebTarget;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.fortify.client.ssc.connection.SSCAuthenticatingRestConnection;
+import com.fortify.util.rest.json.JSONList;
+import com.fortify.util.rest.json.JSONMap;
+import com.fortify.util.rest.json.processor.AbstractJSONMapProcessor;
+
+/**
+ * <p>Helper class for streaming all issues of an application version through an 
+ * {@link AbstractJSONMapProcessor}. Issues are retrieved page by page, and each page 
+ * is processed and released before the next page is requested, so memory usage doesn't
+ * depend on the number of issues. Only the requested fields are retrieved from SSC.</p>
+ * 
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCIssueQuery {
+	private static final int PAGE_SIZE = 1000;
+	
+	private FortifySSCIssueQuery() {}
+	
+	/**
+	 * Process all issues in the given application version that match the given search string
+	 * @param conn {@link SSCAuthenticatingRestConnection} used to query SSC
+	 * @param applicationVersionId Application version id
+	 * @param searchString Optional SSC issue search string
+	 * @param fields Comma-separated list of issue fields to retrieve
+	 * @param processor {@link AbstractJSONMapProcessor} to process every issue
+	 */
+	public static void processIssues(SSCAuthenticatingRestConnection conn, String applicationVersionId, String searchString, String fields, AbstractJSONMapProcessor processor) {
+		WebTarget target = conn.getBaseResource()
+				.path("api/v1/projectVersions").path(applicationVersionId).path("issues")
+				.queryParam("limit", String.valueOf(PAGE_SIZE)).queryParam("fields", fields);
+		if ( StringUtils.isNotBlank(searchString) ) {
+			target = target.queryParam("q", searchString).queryParam("qm", "issues");
+		}
+		for ( int start = 0 ; ; start += PAGE_SIZE ) {
+			JSONMap response = conn.executeRequest(HttpMethod.GET, target.queryParam("start", String.valueOf(start)), JSONMap.class, false);
+			JSONList issues = response.get("data", JSONList.class);
+			if ( issues == null || issues.isEmpty() ) { break; }
+			for ( JSONMap issue : issues.asValueType(JSONMap.class) ) {
+				processor.process(issue);
+			}
+			Integer count = response.get("count", Integer.class);
+			if ( issues.size() < PAGE_SIZE || (count != null && start+issues.size() >= count) ) { break; }
+		}
+	}
+}
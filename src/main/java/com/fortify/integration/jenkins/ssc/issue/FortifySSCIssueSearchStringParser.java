@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.issue;
+
+/**
+ * <p>Local syntax check for SSC issue search strings, allowing malformed search strings
+ * to be rejected without a request to SSC. This parser only checks the structure of a
+ * search string; whether modifiers and values are actually supported is still validated
+ * by SSC. The following syntax is accepted:</p>
+ * <pre>
+ * searchString := term (whitespace term)*
+ * term         := ['!'] (modifier ':' ['!'] value | value)
+ * modifier     := '[' any text except ']' ']' | word
+ * value        := '"' any text except '"' '"' | range | word
+ * range        := ('[' | '(') any text containing ',' (']' | ')')
+ * word         := one or more characters other than whitespace, ':', '"', '[' and ']'
+ * </pre>
+ * 
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCIssueSearchStringParser {
+	private final String searchString;
+	private int position = 0;
+	
+	private FortifySSCIssueSearchStringParser(String searchString) {
+		this.searchString = searchString;
+	}
+	
+	/**
+	 * Check the syntax of the given search string
+	 * @param searchString Search string to be checked
+	 * @return Error message describing the first syntax error, or null if the syntax is valid
+	 */
+	public static String validate(String searchString) {
+		if ( searchString == null ) { return null; }
+		try {
+			new FortifySSCIssueSearchStringParser(searchString).parse();
+			return null;
+		} catch ( IllegalArgumentException e ) {
+			return e.getMessage();
+		}
+	}
+	
+	private void parse() {
+		skipWhitespace();
+		while ( !isAtEnd() ) {
+			parseTerm();
+			if ( !isAtEnd() && !Character.isWhitespace(current()) ) {
+				throw error("Expected whitespace between search terms");
+			}
+			skipWhitespace();
+		}
+	}
+	
+	private void parseTerm() {
+		accept('!');
+		if ( current() == '[' ) {
+			parseBracketedModifier();
+			expect(':', "Expected ':' after modifier");
+			parseModifierValue();
+		} else if ( current() == '"' ) {
+			parseQuoted();
+		} else {
+			parseWord();
+			if ( accept(':') ) { parseModifierValue(); }
+		}
+	}
+	
+	private void parseModifierValue() {
+		accept('!');
+		if ( isAtEnd() || Character.isWhitespace(current()) ) {
+			throw error("Missing value after ':'");
+		} else if ( current() == '"' ) {
+			parseQuoted();
+		} else if ( current() == '[' || current() == '(' ) {
+			parseRange();
+		} else {
+			parseWord();
+		}
+	}
+	
+	private void parseBracketedModifier() {
+		int start = position++;
+		int end = searchString.indexOf(']', position);
+		if ( end < 0 ) { throw error("Unterminated modifier starting at position "+(start+1)); }
+		if ( searchString.substring(position, end).trim().isEmpty() ) { throw error("Empty modifier"); }
+		position = end+1;
+	}
+	
+	private void parseQuoted() {
+		int start = position++;
+		int end = searchString.indexOf('"', position);
+		if ( end < 0 ) { throw error("Unterminated quote starting at position "+(start+1)); }
+		position = end+1;
+	}
+	
+	private void parseRange() {
+		int start = position++;
+		while ( !isAtEnd() && current() != ']' && current() != ')' ) { position++; }
+		if ( isAtEnd() ) { throw error("Unterminated range starting at position "+(start+1)); }
+		if ( searchString.substring(start, position).indexOf(',') < 0 ) { throw error("Range starting at position "+(start+1)+" must contain ','"); }
+		position++;
+	}
+	
+	private void parseWord() {
+		int start = position;
+		while ( !isAtEnd() && !Character.isWhitespace(current()) && ":\"[]".indexOf(current()) < 0 ) { position++; }
+		if ( position == start ) {
+			throw error(isAtEnd() ? "Unexpected end of search string" : "Unexpected '"+current()+"'");
+		}
+	}
+	
+	private boolean accept(char c) {
+		if ( !isAtEnd() && current() == c ) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+	
+	private void expect(char c, String message) {
+		if ( !accept(c) ) { throw error(message); }
+	}
+	
+	private void skipWhitespace() {
+		while ( !isAtEnd() && Character.isWhitespace(current()) ) { position++; }
+	}
+	
+	private char current() {
+		return isAtEnd() ? '\0' : searchString.charAt(position);
+	}
+	
+	private boolean isAtEnd() {
+		return position >= searchString.length();
+	}
+	
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message+" (position "+(position+1)+")");
+	}
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.issue;
+
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import com.fortify.client.ssc.connection.SSCAuthenticatingRestConnection;
+import com.fortify.integration.jenkins.configurable.AbortWithMessageException;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * <p>Immutable summary of the issues in an application version at the time of a single
+ * build, containing the total number of issues and the number of issues per folder, 
+ * severity, category and analysis type. This summary is stored with every build that
+ * publishes results to Jenkins, allowing dashboards and trend charts to be rendered 
+ * without retrieving the full issue list or accessing SSC.</p>
+ * 
+ * <p>The counts for the different {@link Dimension}s are retrieved from SSC using 
+ * parallel issueGroups requests through {@link FortifySSCIssueGroupCounter}.</p>
+ * 
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCIssueSummary implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private final int totalIssues;
+	private final TreeMap<String, Integer> folderCounts;
+	private final TreeMap<String, Integer> severityCounts;
+	private final TreeMap<String, Integer> categoryCounts;
+	private final TreeMap<String, Integer> analysisTypeCounts;
+	
+	public static enum Dimension {
+		FOLDER("Folder"), SEVERITY("Severity"), CATEGORY("Category"), ANALYSIS_TYPE("Analysis Type");
+		
+		private final String groupingType;
+		
+		private Dimension(String groupingType) {
+			this.groupingType = groupingType;
+		}
+		
+		/**
+		 * @return SSC grouping type display name for this dimension
+		 */
+		public String getGroupingType() {
+			return groupingType;
+		}
+	}
+	
+	private FortifySSCIssueSummary(int totalIssues, Map<Dimension, Map<String, Integer>> counts) {
+		this.totalIssues = totalIssues;
+		this.folderCounts = copy(counts.get(Dimension.FOLDER));
+		this.severityCounts = copy(counts.get(Dimension.SEVERITY));
+		this.categoryCounts = copy(counts.get(Dimension.CATEGORY));
+		this.analysisTypeCounts = copy(counts.get(Dimension.ANALYSIS_TYPE));
+	}
+	
+	/**
+	 * Retrieve the issue summary for the given application version from SSC. Any 
+	 * dimension for which the corresponding grouping type is not available on SSC
+	 * is logged, and will have no counts in the resulting summary.
+	 * @param log Build log
+	 * @param conn {@link SSCAuthenticatingRestConnection} used to query SSC
+	 * @param applicationVersionId Application version id
+	 * @param totalIssues Total number of issues in the given application version
+	 * @return {@link FortifySSCIssueSummary} instance
+	 */
+	public static FortifySSCIssueSummary query(PrintStream log, SSCAuthenticatingRestConnection conn, String applicationVersionId, int totalIssues) {
+		final FortifySSCIssueGroupCounter counter = new FortifySSCIssueGroupCounter(conn, applicationVersionId, null);
+		Map<Dimension, CompletableFuture<Map<String, Integer>>> futures = new EnumMap<>(Dimension.class);
+		ExecutorService executor = Executors.newFixedThreadPool(Dimension.values().length, 
+				new NamingThreadFactory(new DaemonThreadFactory(), "Fortify SSC issue summary for application version "+applicationVersionId));
+		try {
+			for ( final Dimension dimension : Dimension.values() ) {
+				if ( counter.isGroupingTypeAvailable(dimension.getGroupingType()) ) {
+					futures.put(dimension, CompletableFuture.supplyAsync(new Supplier<Map<String, Integer>>() {
+						@Override
+						public Map<String, Integer> get() {
+							return counter.getGroupCounts(dimension.getGroupingType());
+						}
+					}, executor));
+				} else {
+					log.println("[WARN] Issue grouping type '"+dimension.getGroupingType()+"' not available; not including in summary");
+				}
+			}
+			Map<Dimension, Map<String, Integer>> counts = new EnumMap<>(Dimension.class);
+			for ( Map.Entry<Dimension, CompletableFuture<Map<String, Integer>>> entry : futures.entrySet() ) {
+				counts.put(entry.getKey(), entry.getValue().join());
+			}
+			return new FortifySSCIssueSummary(totalIssues, counts);
+		} catch ( CompletionException e ) {
+			if ( e.getCause() instanceof RuntimeException ) { throw (RuntimeException)e.getCause(); }
+			throw new AbortWithMessageException("Error retrieving issue summary from SSC: "+e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private static TreeMap<String, Integer> copy(Map<String, Integer> counts) {
+		TreeMap<String, Integer> result = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		if ( counts != null ) { result.putAll(counts); }
+		return result;
+	}
+
+	/**
+	 * @return All {@link Dimension}s, for use in Jelly views
+	 */
+	public Dimension[] getDimensions() {
+		return Dimension.values();
+	}
+
+	public int getTotalIssues() {
+		return totalIssues;
+	}
+	
+	/**
+	 * @param dimension {@link Dimension} for which to return the issue counts
+	 * @return Unmodifiable map from group name to issue count, sorted and looked up case-insensitively
+	 */
+	public Map<String, Integer> getCounts(Dimension dimension) {
+		switch (dimension) {
+		case FOLDER: return Collections.unmodifiableMap(folderCounts);
+		case SEVERITY: return Collections.unmodifiableMap(severityCounts);
+		case CATEGORY: return Collections.unmodifiableMap(categoryCounts);
+		default: return Collections.unmodifiableMap(analysisTypeCounts);
+		}
+	}
+	
+	/**
+	 * @param dimension {@link Dimension} for which to return the issue count
+	 * @param groupName Group name, for example a folder or category name
+	 * @return Number of issues in the given group, or 0 if the group contains no issues
+	 */
+	public int getCount(Dimension dimension, String groupName) {
+		Integer result = getCounts(dimension).get(groupName);
+		return result == null ? 0 : result;
+	}
+}
@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.pipeline;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import com.fortify.integration.jenkins.ssc.FortifySSCGlobalConfiguration;
+import com.fortify.integration.jenkins.ssc.action.FortifySSCUploadedArtifactsAction;
+import com.fortify.integration.jenkins.ssc.action.FortifySSCUploadedArtifactsAction.UploadedArtifact;
+import com.fortify.integration.jenkins.ssc.upload.FortifySSCArtifactStatus;
+import com.fortify.integration.jenkins.ssc.upload.FortifySSCArtifactStatusPoller;
+
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.util.Timer;
+
+/**
+ * <p>Pipeline step that waits for SSC to finish processing all artifacts that were uploaded
+ * earlier in the current run by the FPR upload operation. Typically the upload operation
+ * is configured with a processing time-out of 0 inside a node block, and this step is 
+ * invoked outside of any node block:</p>
+ * 
+ * <pre>
+ * node { performOnSSC(ops: [sscUploadFPR(processingTimeOutSeconds: '0')]) }
+ * sscWaitForProcessing(timeOutSeconds: 600)
+ * </pre>
+ * 
+ * <p>This step doesn't require a node, and while waiting it doesn't occupy any thread;
+ * artifacts are registered with the controller-wide {@link FortifySSCArtifactStatusPoller},
+ * which completes this step once all artifacts have been processed. The uploaded artifacts
+ * and the time-out are stored in the step execution, so waiting continues after a controller
+ * restart.</p>
+ * 
+ * @author Ruud Senden
+ *
+ */
+public class FortifySSCWaitForProcessingStep extends Step {
+	private int timeOutSeconds = 600;
+	
+	@DataBoundConstructor
+	public FortifySSCWaitForProcessingStep() {}
+	
+	public int getTimeOutSeconds() {
+		return timeOutSeconds;
+	}
+
+	@DataBoundSetter
+	public void setTimeOutSeconds(int timeOutSeconds) {
+		this.timeOutSeconds = timeOutSeconds;
+	}
+
+	@Override
+	public StepExecution start(StepContext context) throws Exception {
+		FortifySSCUploadedArtifactsAction action = context.get(Run.class).getAction(FortifySSCUploadedArtifactsAction.class);
+		List<UploadedArtifact> uploadedArtifacts = action==null ? Collections.<UploadedArtifact>emptyList() : action.getUploadedArtifacts();
+		return new Execution(context, uploadedArtifacts, System.currentTimeMillis()+TimeUnit.SECONDS.toMillis(timeOutSeconds));
+	}
+	
+	public static final class Execution extends StepExecution {
+		private static final long serialVersionUID = 1L;
+		private final List<UploadedArtifact> uploadedArtifacts;
+		private final long deadline;
+		private transient volatile List<CompletableFuture<FortifySSCArtifactStatus>> futures;
+		private transient volatile ScheduledFuture<?> timeout;
+		
+		public Execution(StepContext context, List<UploadedArtifact> uploadedArtifacts, long deadline) {
+			super(context);
+			this.uploadedArtifacts = new ArrayList<>(uploadedArtifacts);
+			this.deadline = deadline;
+		}
+		
+		@Override
+		public boolean start() throws Exception {
+			PrintStream log = getContext().get(TaskListener.class).getLogger();
+			if ( uploadedArtifacts.isEmpty() ) {
+				log.println("[WARN] No artifacts uploaded to SSC in this run; nothing to wait for");
+				getContext().onSuccess(null);
+				return true;
+			}
+			log.println("[INFO] Waiting for SSC to process "+uploadedArtifacts.size()+" artifact(s)");
+			register(log);
+			return false;
+		}
+		
+		@Override
+		public void onResume() {
+			try {
+				register(getContext().get(TaskListener.class).getLogger());
+			} catch ( Exception e ) {
+				getContext().onFailure(e);
+			}
+		}
+		
+		@Override
+		public void stop(Throwable cause) throws Exception {
+			cancel();
+			getContext().onFailure(cause);
+		}
+		
+		/**
+		 * Register all uploaded artifacts with the controller-wide {@link FortifySSCArtifactStatusPoller}, 
+		 * and complete this step once all artifacts have been processed or the time-out expires. Artifacts
+		 * that were already processed before a restart will simply be reported as processed again.
+		 */
+		private void register(final PrintStream log) {
+			FortifySSCArtifactStatusPoller poller = FortifySSCGlobalConfiguration.get().getArtifactStatusPoller();
+			List<CompletableFuture<FortifySSCArtifactStatus>> futures = new ArrayList<>(uploadedArtifacts.size());
+			for ( final UploadedArtifact artifact : uploadedArtifacts ) {
+				futures.add(poller.register(log, artifact.getApplicationVersionId(), artifact.getArtifactId(), artifact.isAutoApprove())
+					.thenApply(new Function<FortifySSCArtifactStatus, FortifySSCArtifactStatus>() {
+						@Override
+						public FortifySSCArtifactStatus apply(FortifySSCArtifactStatus status) {
+							if ( status != FortifySSCArtifactStatus.PROCESS_COMPLETE ) {
+								throw new CompletionException(new AbortException("Artifact "+artifact.getFileName()+" was uploaded but not processed (status "+status+")"));
+							}
+							log.println("[INFO] SSC finished processing "+artifact.getFileName());
+							return status;
+						}
+					}));
+			}
+			this.futures = futures;
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).whenComplete(new BiConsumer<Void, Throwable>() {
+				@Override
+				public void accept(Void result, Throwable t) {
+					cancel();
+					Throwable cause = t instanceof CompletionException && t.getCause()!=null ? t.getCause() : t;
+					if ( cause == null ) {
+						getContext().onSuccess(null);
+					} else if ( !(cause instanceof CancellationException) ) {
+						// Cancellation means that we timed out or were stopped, which has already been reported 
+						getContext().onFailure(cause);
+					}
+				}
+			});
+			this.timeout = Timer.get().schedule(new Runnable() {
+				@Override
+				public void run() {
+					cancel();
+					getContext().onFailure(new AbortException("Timed out waiting for SSC to process uploaded artifacts"));
+				}
+			}, Math.max(0, deadline-System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		}
+		
+		private void cancel() {
+			ScheduledFuture<?> timeout = this.timeout;
+			if ( timeout != null ) { timeout.cancel(false); }
+			List<CompletableFuture<FortifySSCArtifactStatus>> futures = this.futures;
+			if ( futures != null ) {
+				for ( CompletableFuture<FortifySSCArtifactStatus> future : futures ) {
+					future.cancel(false);
+				}
+			}
+		}
+	}
+	
+	@Extension
+	public static final class DescriptorImpl extends StepDescriptor {
+		@Override
+		public Set<? extends Class<?>> getRequiredContext() {
+			Set<Class<?>> result = new HashSet<>();
+			result.add(Run.class);
+			result.add(TaskListener.class);
+			return result;
+		}
+
+		@Override
+		public String getFunctionName() {
+			return "sscWaitForProcessing";
+		}
+		
+		@Override
+		public String getDisplayName() {
+			return "Wait for SSC to process uploaded FPR files";
+		}
+	}
+}
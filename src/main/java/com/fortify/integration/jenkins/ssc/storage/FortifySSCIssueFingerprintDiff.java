@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.storage;
+
+import java.util.Arrays;
+
+/**
+ * <p>Difference between two {@link FortifySSCIssueFingerprints} sets, typically the issues 
+ * of a previous build and the issues of the current build. The difference is calculated
+ * with a single linear merge of both sorted fingerprint arrays.</p>
+ * 
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCIssueFingerprintDiff {
+	private final FortifySSCIssueFingerprints newIssues;
+	private final FortifySSCIssueFingerprints fixedIssues;
+	private final int unchangedCount;
+	
+	private FortifySSCIssueFingerprintDiff(FortifySSCIssueFingerprints newIssues, FortifySSCIssueFingerprints fixedIssues, int unchangedCount) {
+		this.newIssues = newIssues;
+		this.fixedIssues = fixedIssues;
+		this.unchangedCount = unchangedCount;
+	}
+	
+	/**
+	 * Compare the given fingerprint sets
+	 * @param previous Previous fingerprints
+	 * @param current Current fingerprints
+	 * @return {@link FortifySSCIssueFingerprintDiff} describing new, fixed and unchanged issues
+	 */
+	public static FortifySSCIssueFingerprintDiff compare(FortifySSCIssueFingerprints previous, FortifySSCIssueFingerprints current) {
+		long[] newIssues = new long[current.size()];
+		long[] fixedIssues = new long[previous.size()];
+		int newCount = 0, fixedCount = 0, unchangedCount = 0;
+		int p = 0, c = 0;
+		while ( p < previous.size() && c < current.size() ) {
+			long previousFingerprint = previous.get(p);
+			long currentFingerprint = current.get(c);
+			if ( previousFingerprint == currentFingerprint ) {
+				unchangedCount++; p++; c++;
+			} else if ( previousFingerprint < currentFingerprint ) {
+				fixedIssues[fixedCount++] = previousFingerprint; p++;
+			} else {
+				newIssues[newCount++] = currentFingerprint; c++;
+			}
+		}
+		while ( p < previous.size() ) { fixedIssues[fixedCount++] = previous.get(p++); }
+		while ( c < current.size() ) { newIssues[newCount++] = current.get(c++); }
+		return new FortifySSCIssueFingerprintDiff(
+				new FortifySSCIssueFingerprints(Arrays.copyOf(newIssues, newCount)), 
+				new FortifySSCIssueFingerprints(Arrays.copyOf(fixedIssues, fixedCount)), 
+				unchangedCount);
+	}
+
+	/**
+	 * @return Fingerprints of issues that are present in the current set, but not in the previous set
+	 */
+	public FortifySSCIssueFingerprints getNewIssues() {
+		return newIssues;
+	}
+
+	/**
+	 * @return Fingerprints of issues that are present in the previous set, but not in the current set
+	 */
+	public FortifySSCIssueFingerprints getFixedIssues() {
+		return fixedIssues;
+	}
+
+	public int getUnchangedCount() {
+		return unchangedCount;
+	}
+}
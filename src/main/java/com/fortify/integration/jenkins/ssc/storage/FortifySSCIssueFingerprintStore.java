@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.fortify.client.ssc.connection.SSCAuthenticatingRestConnection;
+import com.fortify.integration.jenkins.ssc.issue.FortifySSCIssueQuery;
+import com.fortify.integration.jenkins.ssc.json.processor.AddIssueInstanceIdsToFingerprints;
+
+import hudson.model.Result;
+import hudson.model.Run;
+
+/**
+ * <p>Stores {@link FortifySSCIssueFingerprints} in the build directory of individual runs,
+ * and provides access to the fingerprints of previous runs. Fingerprints are stored when
+ * publishing results to Jenkins, and represent all visible issues in the application version
+ * at that time.</p>
+ * 
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCIssueFingerprintStore {
+	private static final Logger LOG = Logger.getLogger(FortifySSCIssueFingerprintStore.class.getName());
+	private static final String FILE_NAME = "fortify-ssc-issue-fingerprints.bin";
+	private static final int MAX_BUILDS_TO_CHECK = 20;
+	
+	private FortifySSCIssueFingerprintStore() {}
+	
+	/**
+	 * Retrieve fingerprints for all issues in the given application version, optionally
+	 * matching the given search string. Only issue instance id's are retrieved from SSC.
+	 * @param conn {@link SSCAuthenticatingRestConnection} used to query SSC
+	 * @param applicationVersionId Application version id
+	 * @param searchString Optional SSC issue search string
+	 * @return {@link FortifySSCIssueFingerprints} for all matching issues
+	 */
+	public static FortifySSCIssueFingerprints query(SSCAuthenticatingRestConnection conn, String applicationVersionId, String searchString) {
+		FortifySSCIssueFingerprints.Builder builder = new FortifySSCIssueFingerprints.Builder();
+		FortifySSCIssueQuery.processIssues(conn, applicationVersionId, searchString, "issueInstanceId", new AddIssueInstanceIdsToFingerprints(builder));
+		return builder.build();
+	}
+	
+	/**
+	 * Store the given fingerprints for the given run
+	 * @param run Run to store fingerprints for
+	 * @param fingerprints Fingerprints to be stored
+	 * @throws IOException if the fingerprints cannot be stored
+	 */
+	public static void save(Run<?, ?> run, FortifySSCIssueFingerprints fingerprints) throws IOException {
+		fingerprints.write(getFile(run));
+	}
+	
+	/**
+	 * Load the fingerprints that were stored for the given run
+	 * @param run Run to load fingerprints for
+	 * @return Stored fingerprints, or null if no (valid) fingerprints were stored for the given run
+	 */
+	public static FortifySSCIssueFingerprints load(Run<?, ?> run) {
+		File file = getFile(run);
+		if ( !file.isFile() ) { return null; }
+		try {
+			return FortifySSCIssueFingerprints.read(file);
+		} catch ( IOException e ) {
+			LOG.log(Level.WARNING, "Error reading issue fingerprints for "+run, e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Find the most recent successful run before the given run that has stored fingerprints.
+	 * The search starts at the last successful build of the job, and checks at most 
+	 * {@value #MAX_BUILDS_TO_CHECK} builds, to avoid loading the full build history for 
+	 * jobs that don't have any stored fingerprints, for example after upgrading the plugin.
+	 * @param run Current run
+	 * @return Most recent successful run with stored fingerprints, or null if not available
+	 */
+	public static Run<?, ?> findLastSuccessfulRunWithFingerprints(Run<?, ?> run) {
+		Run<?, ?> previous = run.getParent().getLastSuccessfulBuild();
+		for ( int i = 0 ; previous != null && i < MAX_BUILDS_TO_CHECK ; i++, previous = previous.getPreviousBuild() ) {
+			if ( previous.getNumber() >= run.getNumber() ) { continue; }
+			Result result = previous.getResult();
+			if ( result != null && result.isBetterOrEqualTo(Result.SUCCESS) && getFile(previous).isFile() ) {
+				return previous;
+			}
+		}
+		return null;
+	}
+	
+	private static File getFile(Run<?, ?> run) {
+		return new File(run.getRootDir(), FILE_NAME);
+	}
+}
@@ -0,0 +1,446 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.fortify.util.rest.json.JSONMap;
+
+import hudson.model.Run;
+
+/**
+ * <p>Columnar snapshot of all issues in an application version at the time of a single build.
+ * Every issue attribute is stored in a separate column; string attributes with a limited number
+ * of distinct values (see {@link Column}) are dictionary-encoded, storing every distinct value
+ * only once and using 1, 2 or 4 bytes per issue depending on the dictionary size. Issue instance 
+ * id's are stored as a single block of UTF-8 bytes with an offset column.</p>
+ * 
+ * <p>Snapshot files are written by {@link Builder}, and read by {@link #open(File)} into a single
+ * heap buffer, without creating any per-issue objects; individual values are decoded from that 
+ * buffer when requested. We don't use a memory mapping, as a mapping is only released once the
+ * buffer is garbage collected, and on Windows an open mapping prevents the build directory from
+ * being deleted and the snapshot file from being replaced. The file is closed as soon as it
+ * has been read.</p>
+ * 
+ * <p>Every snapshot file contains a random stamp that is generated when the file is written, 
+ * allowing readers to detect that a snapshot file has been rewritten, even if the file 
+ * modification time didn't change; see {@link #readStamp(File)}.</p>
+ * 
+ * <p>File layout (big-endian):</p>
+ * <pre>
+ * header:       int magic, int version, long stamp, int rowCount
+ * dictionaries: for every {@link Column}: int size, size * (int length, UTF-8 bytes), byte codeWidth
+ * columns:      long[rowCount] id, int[rowCount] lineNumber, float[rowCount] severity,
+ *               for every {@link Column}: codeWidth bytes * rowCount,
+ *               int[rowCount+1] issueInstanceId offsets, issueInstanceId UTF-8 bytes
+ * </pre>
+ * 
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCIssueSnapshot {
+	private static final int MAGIC = 0x46534953; // 'FSIS'
+	private static final int FORMAT_VERSION = 1;
+	private static final String FILE_NAME = "fortify-ssc-issues.bin";
+	
+	/** Comma-separated list of issue fields to be retrieved from SSC for building a snapshot */
+	public static final String FIELDS = "id,issueInstanceId,lineNumber,severity,"+Column.getFieldNames();
+	
+	/**
+	 * Dictionary-encoded issue attributes
+	 */
+	public static enum Column {
+		CATEGORY("category", "issueName"), FOLDER("folder", "friority"), FILE("file", "fullFileName"), 
+		KINGDOM("kingdom", "kingdom"), ANALYSIS_TYPE("analysisType", "engineType");
+		
+		private final String key;
+		private final String fieldName;
+		
+		private Column(String key, String fieldName) {
+			this.key = key;
+			this.fieldName = fieldName;
+		}
+		
+		/**
+		 * @return Key for identifying this column in URL parameters and JSON output
+		 */
+		public String getKey() {
+			return key;
+		}
+		
+		/**
+		 * @return SSC issue field name for this column
+		 */
+		public String getFieldName() {
+			return fieldName;
+		}
+		
+		private static String getFieldNames() {
+			List<String> result = new ArrayList<>();
+			for ( Column column : values() ) { result.add(column.fieldName); }
+			return StringUtils.join(result, ",");
+		}
+	}
+	
+	private final ByteBuffer buffer;
+	private final long stamp;
+	private final int rowCount;
+	private final String[][] dictionaries;
+	private final int[] codeWidths;
+	private final int[] codePositions;
+	private final int idPosition;
+	private final int lineNumberPosition;
+	private final int severityPosition;
+	private final int instanceIdOffsetsPosition;
+	private final int instanceIdBytesPosition;
+	
+	private FortifySSCIssueSnapshot(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		try {
+			if ( buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION ) {
+				throw new IOException("Unsupported issue snapshot file format");
+			}
+			this.stamp = buffer.getLong();
+			this.rowCount = buffer.getInt();
+			Column[] columns = Column.values();
+			this.dictionaries = new String[columns.length][];
+			this.codeWidths = new int[columns.length];
+			for ( int c = 0 ; c < columns.length ; c++ ) {
+				String[] dictionary = new String[buffer.getInt()];
+				for ( int i = 0 ; i < dictionary.length ; i++ ) {
+					byte[] bytes = new byte[buffer.getInt()];
+					buffer.get(bytes);
+					dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+				}
+				dictionaries[c] = dictionary;
+				codeWidths[c] = buffer.get();
+			}
+			int position = buffer.position();
+			this.idPosition = position; position += 8*rowCount;
+			this.lineNumberPosition = position; position += 4*rowCount;
+			this.severityPosition = position; position += 4*rowCount;
+			this.codePositions = new int[columns.length];
+			for ( int c = 0 ; c < columns.length ; c++ ) {
+				codePositions[c] = position; position += codeWidths[c]*rowCount;
+			}
+			this.instanceIdOffsetsPosition = position; position += 4*(rowCount+1);
+			this.instanceIdBytesPosition = position;
+			if ( position > buffer.limit() || position+buffer.getInt(position-4) > buffer.limit() ) {
+				throw new IOException("Truncated issue snapshot file");
+			}
+		} catch ( BufferUnderflowException | IndexOutOfBoundsException e ) {
+			throw new IOException("Truncated issue snapshot file", e);
+		}
+	}
+	
+	/**
+	 * Read the given snapshot file; the file is closed before this method returns
+	 * @param file Snapshot file, as written by {@link Builder#write(File)}
+	 * @return {@link FortifySSCIssueSnapshot} instance
+	 * @throws IOException if the file cannot be read or has an invalid format
+	 */
+	public static FortifySSCIssueSnapshot open(File file) throws IOException {
+		try ( FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ) ) {
+			long size = channel.size();
+			if ( size > Integer.MAX_VALUE ) { throw new IOException("Issue snapshot file too large: "+file); }
+			ByteBuffer buffer = ByteBuffer.allocate((int)size);
+			while ( buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0 ) {}
+			if ( buffer.hasRemaining() ) { throw new IOException("Truncated issue snapshot file: "+file); }
+			buffer.flip();
+			return new FortifySSCIssueSnapshot(buffer);
+		}
+	}
+	
+	/**
+	 * Read the stamp of the given snapshot file, without reading any issue data
+	 * @param file Snapshot file, as written by {@link Builder#write(File)}
+	 * @return Stamp that was generated when the given file was written
+	 * @throws IOException if the file cannot be read or has an invalid format
+	 */
+	public static long readStamp(File file) throws IOException {
+		try ( DataInputStream in = new DataInputStream(new FileInputStream(file)) ) {
+			if ( in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION ) {
+				throw new IOException("Unsupported issue snapshot file format: "+file);
+			}
+			return in.readLong();
+		}
+	}
+	
+	/**
+	 * @param run Run for which to get the snapshot file
+	 * @return Snapshot file for the given run; this file may not exist
+	 */
+	public static File getFile(Run<?, ?> run) {
+		return new File(run.getRootDir(), FILE_NAME);
+	}
+	
+	public int size() {
+		return rowCount;
+	}
+	
+	/**
+	 * @return Stamp that was generated when this snapshot was written
+	 */
+	public long getStamp() {
+		return stamp;
+	}
+	
+	/**
+	 * @return Number of bytes held in memory for this snapshot
+	 */
+	public int getByteSize() {
+		return buffer.capacity();
+	}
+	
+	public long getId(int row) {
+		return buffer.getLong(idPosition+8*checkRow(row));
+	}
+	
+	public int getLineNumber(int row) {
+		return buffer.getInt(lineNumberPosition+4*checkRow(row));
+	}
+	
+	public float getSeverity(int row) {
+		return buffer.getFloat(severityPosition+4*checkRow(row));
+	}
+	
+	public String getIssueInstanceId(int row) {
+		int offsetPosition = instanceIdOffsetsPosition+4*checkRow(row);
+		int start = buffer.getInt(offsetPosition);
+		byte[] bytes = new byte[buffer.getInt(offsetPosition+4)-start];
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.position(instanceIdBytesPosition+start);
+		duplicate.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * @param column {@link Column} to get the dictionary code for
+	 * @param row Row number
+	 * @return Dictionary code for the given column and row; codes of different rows can be
+	 *         compared for equality, but code order doesn't reflect value order
+	 */
+	public int getCode(Column column, int row) {
+		int c = column.ordinal();
+		int position = codePositions[c]+codeWidths[c]*checkRow(row);
+		switch (codeWidths[c]) {
+		case 1: return buffer.get(position) & 0xFF;
+		case 2: return buffer.getShort(position) & 0xFFFF;
+		default: return buffer.getInt(position);
+		}
+	}
+	
+	/**
+	 * @param column {@link Column} to get the value for
+	 * @param row Row number
+	 * @return Value for the given column and row, or empty string if not available
+	 */
+	public String getString(Column column, int row) {
+		return dictionaries[column.ordinal()][getCode(column, row)];
+	}
+	
+	/**
+	 * @param column {@link Column} to get the dictionary for
+	 * @return Copy of all distinct values for the given column, indexed by dictionary code
+	 */
+	public String[] getDictionary(Column column) {
+		return dictionaries[column.ordinal()].clone();
+	}
+	
+	private int checkRow(int row) {
+		if ( row < 0 || row >= rowCount ) { throw new IndexOutOfBoundsException("Row "+row+" out of range [0,"+rowCount+")"); }
+		return row;
+	}
+	
+	/**
+	 * Builder for writing snapshot files; issues are added one at a time, for example through
+	 * {@link com.fortify.integration.jenkins.ssc.json.processor.AddIssuesToSnapshot}. Column values 
+	 * are collected in primitive arrays until the snapshot is written. This class is not thread-safe.
+	 */
+	public static final class Builder {
+		private final List<Map<String, Integer>> dictionaries = new ArrayList<>();
+		private long[] ids = new long[1024];
+		private int[] lineNumbers = new int[1024];
+		private float[] severities = new float[1024];
+		private int[][] codes = new int[Column.values().length][1024];
+		private final ByteArrayBuilder instanceIds = new ByteArrayBuilder();
+		private int[] instanceIdOffsets = new int[1025];
+		private int rowCount = 0;
+		
+		public Builder() {
+			for ( int c = 0 ; c < Column.values().length ; c++ ) {
+				Map<String, Integer> dictionary = new HashMap<>();
+				dictionary.put("", 0);
+				dictionaries.add(dictionary);
+			}
+		}
+		
+		/**
+		 * Add the given SSC issue to this snapshot
+		 * @param issue SSC issue containing the fields listed in {@link FortifySSCIssueSnapshot#FIELDS}
+		 * @return This {@link Builder} instance
+		 */
+		public Builder addIssue(JSONMap issue) {
+			ensureCapacity();
+			ids[rowCount] = getNumber(issue, "id").longValue();
+			lineNumbers[rowCount] = getNumber(issue, "lineNumber").intValue();
+			severities[rowCount] = getNumber(issue, "severity").floatValue();
+			for ( Column column : Column.values() ) {
+				codes[column.ordinal()][rowCount] = encode(column, issue.get(column.getFieldName(), String.class));
+			}
+			instanceIds.append(StringUtils.defaultString(issue.get("issueInstanceId", String.class)).getBytes(StandardCharsets.UTF_8));
+			instanceIdOffsets[++rowCount] = instanceIds.size();
+			return this;
+		}
+		
+		public int size() {
+			return rowCount;
+		}
+		
+		/**
+		 * Write the snapshot to the given file. The file is replaced atomically.
+		 * @param file File to write to
+		 * @throws IOException if the file cannot be written
+		 */
+		public void write(File file) throws IOException {
+			File tmpFile = new File(file.getParentFile(), file.getName()+".tmp");
+			int[] codeWidths = new int[Column.values().length];
+			try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 64*1024)) ) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeLong(UUID.randomUUID().getMostSignificantBits());
+				out.writeInt(rowCount);
+				for ( int c = 0 ; c < codeWidths.length ; c++ ) {
+					String[] dictionary = toArray(dictionaries.get(c));
+					out.writeInt(dictionary.length);
+					for ( String value : dictionary ) {
+						byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+						out.writeInt(bytes.length);
+						out.write(bytes);
+					}
+					codeWidths[c] = dictionary.length <= 0xFF+1 ? 1 : dictionary.length <= 0xFFFF+1 ? 2 : 4;
+					out.writeByte(codeWidths[c]);
+				}
+				for ( int i = 0 ; i < rowCount ; i++ ) { out.writeLong(ids[i]); }
+				for ( int i = 0 ; i < rowCount ; i++ ) { out.writeInt(lineNumbers[i]); }
+				for ( int i = 0 ; i < rowCount ; i++ ) { out.writeFloat(severities[i]); }
+				for ( int c = 0 ; c < codeWidths.length ; c++ ) {
+					for ( int i = 0 ; i < rowCount ; i++ ) {
+						switch (codeWidths[c]) {
+						case 1: out.writeByte(codes[c][i]); break;
+						case 2: out.writeShort(codes[c][i]); break;
+						default: out.writeInt(codes[c][i]);
+						}
+					}
+				}
+				for ( int i = 0 ; i <= rowCount ; i++ ) { out.writeInt(instanceIdOffsets[i]); }
+				instanceIds.writeTo(out);
+			}
+			Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		
+		private int encode(Column column, String value) {
+			Map<String, Integer> dictionary = dictionaries.get(column.ordinal());
+			String key = StringUtils.defaultString(value);
+			Integer code = dictionary.get(key);
+			if ( code == null ) {
+				code = dictionary.size();
+				dictionary.put(key, code);
+			}
+			return code;
+		}
+		
+		private static Number getNumber(JSONMap issue, String fieldName) {
+			Number result = issue.get(fieldName, Number.class);
+			return result == null ? Integer.valueOf(0) : result;
+		}
+		
+		private static String[] toArray(Map<String, Integer> dictionary) {
+			String[] result = new String[dictionary.size()];
+			for ( Map.Entry<String, Integer> entry : dictionary.entrySet() ) {
+				result[entry.getValue()] = entry.getKey();
+			}
+			return result;
+		}
+		
+		private void ensureCapacity() {
+			if ( rowCount == ids.length ) {
+				int newCapacity = ids.length*2;
+				ids = Arrays.copyOf(ids, newCapacity);
+				lineNumbers = Arrays.copyOf(lineNumbers, newCapacity);
+				severities = Arrays.copyOf(severities, newCapacity);
+				for ( int c = 0 ; c < codes.length ; c++ ) {
+					codes[c] = Arrays.copyOf(codes[c], newCapacity);
+				}
+				instanceIdOffsets = Arrays.copyOf(instanceIdOffsets, newCapacity+1);
+			}
+		}
+	}
+	
+	/**
+	 * Growable byte array, avoiding the synchronization overhead of {@link java.io.ByteArrayOutputStream}
+	 */
+	private static final class ByteArrayBuilder {
+		private byte[] bytes = new byte[32*1024];
+		private int size = 0;
+		
+		public void append(byte[] value) {
+			if ( size+value.length > bytes.length ) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length*2, size+value.length));
+			}
+			System.arraycopy(value, 0, bytes, size, value.length);
+			size += value.length;
+		}
+		
+		public int size() {
+			return size;
+		}
+		
+		public void writeTo(DataOutputStream out) throws IOException {
+			out.write(bytes, 0, size);
+		}
+	}
+}
@@ -0,0 +1,338 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.fortify.integration.jenkins.ssc.issue.FortifySSCIssueSummary;
+import com.fortify.integration.jenkins.ssc.issue.FortifySSCIssueSummary.Dimension;
+
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+
+/**
+ * <p>Job-level issue trend, stored as an append-only file of fixed-size records in the
+ * job directory. Every build that publishes results to Jenkins appends a single record, 
+ * so trend charts can be rendered from a single sequential read of this file, without
+ * loading any {@link Run} instances.</p>
+ * 
+ * <p>Records for deleted builds, for example deleted by the build discarder, are removed
+ * from the trend file by {@link TrendRunListener}. If the trend file contains more than 
+ * {@link #MAX_ENTRIES} records, the oldest half of the history is downsampled by removing 
+ * every other record.</p>
+ * 
+ * <p>All access to the trend file for a given job is synchronized on a private lock object
+ * for that job, keyed by the job's full name. We don't synchronize on the {@link Job} instance
+ * itself, as Jenkins core and other plugins also use the {@link Job} monitor, and we don't want
+ * our file I/O to block them (or vice versa).</p>
+ * 
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCIssueTrend {
+	private static final Logger LOG = Logger.getLogger(FortifySSCIssueTrend.class.getName());
+	private static final String FILE_NAME = "fortify-ssc-issue-trend.bin";
+	private static final int MAGIC = 0x46535454; // 'FSTT'
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final int ENTRY_SIZE = 44;
+	static final int MAX_ENTRIES = 10000;
+	private static final ConcurrentMap<String, Object> LOCKS = new ConcurrentHashMap<>();
+	
+	private FortifySSCIssueTrend() {}
+	
+	/**
+	 * Immutable trend entry for a single build. Counts that are not available are represented by -1.
+	 */
+	public static final class Entry {
+		private final int buildNumber;
+		private final long timestamp;
+		private final int totalIssues;
+		private final int newIssues;
+		private final int fixedIssues;
+		private final int critical;
+		private final int high;
+		private final int medium;
+		private final int low;
+		
+		public Entry(int buildNumber, long timestamp, int totalIssues, int newIssues, int fixedIssues, int critical, int high, int medium, int low) {
+			this.buildNumber = buildNumber;
+			this.timestamp = timestamp;
+			this.totalIssues = totalIssues;
+			this.newIssues = newIssues;
+			this.fixedIssues = fixedIssues;
+			this.critical = critical;
+			this.high = high;
+			this.medium = medium;
+			this.low = low;
+		}
+		
+		/**
+		 * Create a trend entry for the given run
+		 * @param run Run for which to create the entry
+		 * @param summary Issue summary for the given run
+		 * @param diff Difference with the last successful build, or null if not available
+		 * @return New {@link Entry} instance
+		 */
+		public static Entry create(Run<?, ?> run, FortifySSCIssueSummary summary, FortifySSCIssueFingerprintDiff diff) {
+			return new Entry(run.getNumber(), run.getTimeInMillis(), summary.getTotalIssues(),
+					diff==null ? -1 : diff.getNewIssues().size(), diff==null ? -1 : diff.getFixedIssues().size(),
+					summary.getCount(Dimension.FOLDER, "Critical"), summary.getCount(Dimension.FOLDER, "High"),
+					summary.getCount(Dimension.FOLDER, "Medium"), summary.getCount(Dimension.FOLDER, "Low"));
+		}
+		
+		private void write(DataOutputStream out) throws IOException {
+			out.writeInt(buildNumber);
+			out.writeLong(timestamp);
+			out.writeInt(totalIssues);
+			out.writeInt(newIssues);
+			out.writeInt(fixedIssues);
+			out.writeInt(critical);
+			out.writeInt(high);
+			out.writeInt(medium);
+			out.writeInt(low);
+			out.writeInt(0); // Reserved
+		}
+		
+		private static Entry read(DataInputStream in) throws IOException {
+			Entry result = new Entry(in.readInt(), in.readLong(), in.readInt(), in.readInt(), in.readInt(), 
+					in.readInt(), in.readInt(), in.readInt(), in.readInt());
+			in.readInt(); // Reserved
+			return result;
+		}
+
+		public int getBuildNumber() { return buildNumber; }
+		public long getTimestamp() { return timestamp; }
+		public int getTotalIssues() { return totalIssues; }
+		public int getNewIssues() { return newIssues; }
+		public int getFixedIssues() { return fixedIssues; }
+		public int getCritical() { return critical; }
+		public int getHigh() { return high; }
+		public int getMedium() { return medium; }
+		public int getLow() { return low; }
+	}
+	
+	/**
+	 * Append the given entry to the trend file of the given job. If the last entry in the
+	 * trend file has the same build number (for example because results were published
+	 * multiple times during a single build), that entry is replaced. Entries for concurrent
+	 * builds that complete out of order are inserted at the appropriate position.
+	 * @param job Job to which the entry should be appended
+	 * @param entry {@link Entry} to append
+	 * @throws IOException if the trend file cannot be updated
+	 */
+	public static void append(Job<?, ?> job, Entry entry) throws IOException {
+		synchronized (getLock(job)) {
+			File file = getFile(job);
+			if ( !isValid(file) ) {
+				rewrite(file, Collections.singletonList(entry));
+			} else if ( !tryAppend(file, entry) ) {
+				insert(file, entry);
+			}
+		}
+	}
+	
+	/**
+	 * Append the given entry to the end of the given trend file, unless the last entry in 
+	 * the trend file has a higher build number.
+	 * @return true if the entry was appended, false otherwise
+	 */
+	private static boolean tryAppend(File file, Entry entry) throws IOException {
+		long length;
+		try ( RandomAccessFile raf = new RandomAccessFile(file, "rw") ) {
+			length = HEADER_SIZE + (raf.length()-HEADER_SIZE)/ENTRY_SIZE*ENTRY_SIZE; // Ignore any partially written entry
+			if ( length > HEADER_SIZE ) {
+				raf.seek(length-ENTRY_SIZE);
+				int lastBuildNumber = raf.readInt();
+				if ( lastBuildNumber > entry.getBuildNumber() ) { return false; }
+				if ( lastBuildNumber == entry.getBuildNumber() ) { length -= ENTRY_SIZE; }
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(ENTRY_SIZE);
+			entry.write(new DataOutputStream(bytes));
+			raf.setLength(length);
+			raf.seek(length);
+			raf.write(bytes.toByteArray());
+			length += ENTRY_SIZE;
+		}
+		if ( (length-HEADER_SIZE)/ENTRY_SIZE > MAX_ENTRIES ) {
+			rewrite(file, downsample(read(file)));
+		}
+		return true;
+	}
+	
+	/**
+	 * Insert the given entry at the appropriate position in the given trend file, 
+	 * replacing any existing entry with the same build number.
+	 */
+	private static void insert(File file, Entry entry) throws IOException {
+		List<Entry> entries = read(file);
+		List<Entry> result = new ArrayList<>(entries.size()+1);
+		boolean inserted = false;
+		for ( Entry existing : entries ) {
+			if ( !inserted && existing.getBuildNumber() > entry.getBuildNumber() ) { 
+				result.add(entry);
+				inserted = true;
+			}
+			if ( existing.getBuildNumber() != entry.getBuildNumber() ) { result.add(existing); }
+		}
+		if ( !inserted ) { result.add(entry); }
+		rewrite(file, result.size() > MAX_ENTRIES ? downsample(result) : result);
+	}
+	
+	/**
+	 * Read all trend entries for the given job, ordered by build number
+	 * @param job Job for which to read the trend entries
+	 * @return List of trend entries, or empty list if no trend data is available
+	 */
+	public static List<Entry> read(Job<?, ?> job) {
+		synchronized (getLock(job)) {
+			File file = getFile(job);
+			if ( !file.isFile() ) { return Collections.emptyList(); }
+			try {
+				return read(file);
+			} catch ( IOException e ) {
+				LOG.log(Level.WARNING, "Error reading issue trend for "+job, e);
+				return Collections.emptyList();
+			}
+		}
+	}
+	
+	/**
+	 * Remove the entry for the given build number from the trend file of the given job
+	 * @param job Job from which to remove the trend entry
+	 * @param buildNumber Build number to be removed
+	 * @throws IOException if the trend file cannot be updated
+	 */
+	public static void remove(Job<?, ?> job, int buildNumber) throws IOException {
+		synchronized (getLock(job)) {
+			File file = getFile(job);
+			if ( !isValid(file) ) { return; }
+			List<Entry> entries = read(file);
+			List<Entry> result = new ArrayList<>(entries.size());
+			for ( Entry entry : entries ) {
+				if ( entry.getBuildNumber() != buildNumber ) { result.add(entry); }
+			}
+			if ( result.size() != entries.size() ) { rewrite(file, result); }
+		}
+	}
+	
+	/**
+	 * Keep the most recent half of the given entries, and every other entry of the oldest half.
+	 */
+	static List<Entry> downsample(List<Entry> entries) {
+		int oldCount = entries.size()/2;
+		List<Entry> result = new ArrayList<>(entries.size()-oldCount/2);
+		for ( int i = 0 ; i < entries.size() ; i++ ) {
+			if ( i >= oldCount || i % 2 == 0 ) { result.add(entries.get(i)); }
+		}
+		return result;
+	}
+	
+	private static boolean isValid(File file) throws IOException {
+		if ( !file.isFile() || file.length() < HEADER_SIZE ) { return false; }
+		try ( DataInputStream in = new DataInputStream(new FileInputStream(file)) ) {
+			return in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION;
+		}
+	}
+	
+	private static List<Entry> read(File file) throws IOException {
+		int entryCount = (int)((file.length()-HEADER_SIZE)/ENTRY_SIZE);
+		List<Entry> result = new ArrayList<>(Math.max(entryCount, 0));
+		try ( DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))) ) {
+			if ( in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION ) {
+				throw new IOException("Unsupported issue trend file format: "+file);
+			}
+			for ( int i = 0 ; i < entryCount ; i++ ) {
+				result.add(Entry.read(in));
+			}
+		} catch ( EOFException e ) {
+			throw new IOException("Truncated issue trend file: "+file, e);
+		}
+		return result;
+	}
+	
+	private static void rewrite(File file, List<Entry> entries) throws IOException {
+		File tmpFile = new File(file.getParentFile(), file.getName()+".tmp");
+		try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile))) ) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			for ( Entry entry : entries ) {
+				entry.write(out);
+			}
+		}
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	private static Object getLock(Job<?, ?> job) {
+		Object lock = LOCKS.get(job.getFullName());
+		if ( lock == null ) {
+			lock = new Object();
+			Object existing = LOCKS.putIfAbsent(job.getFullName(), lock);
+			if ( existing != null ) { lock = existing; }
+		}
+		return lock;
+	}
+	
+	private static File getFile(Job<?, ?> job) {
+		return new File(job.getRootDir(), FILE_NAME);
+	}
+	
+	/**
+	 * Remove trend entries for deleted builds, keeping the trend file in sync with the 
+	 * build discarder and manual build deletions.
+	 */
+	@Extension
+	public static final class TrendRunListener extends RunListener<Run<?, ?>> {
+		@Override
+		public void onDeleted(Run<?, ?> run) {
+			try {
+				remove(run.getParent(), run.getNumber());
+			} catch ( IOException e ) {
+				LOG.log(Level.WARNING, "Error removing "+run+" from issue trend", e);
+			}
+		}
+	}
+}
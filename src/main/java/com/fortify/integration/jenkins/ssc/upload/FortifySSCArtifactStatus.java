@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.upload;
+
+/**
+ * Processing status of an artifact uploaded to SSC, as far as relevant for
+ * waiting for processing completion. Any SSC status other than the ones
+ * listed here is treated as {@link #PROCESSING}.
+ * 
+ * @author Ruud Senden
+ *
+ */
+public enum FortifySSCArtifactStatus {
+	PROCESSING, PROCESS_COMPLETE, ERROR_PROCESSING, REQUIRE_AUTH;
+	
+	/**
+	 * @return true if SSC will not change the artifact status anymore without user intervention, false otherwise
+	 */
+	public boolean isFinal() {
+		return this != PROCESSING;
+	}
+	
+	public static FortifySSCArtifactStatus fromSSCStatus(String sscStatus) {
+		for ( FortifySSCArtifactStatus status : values() ) {
+			if ( status.name().equals(sscStatus) ) { return status; }
+		}
+		return PROCESSING;
+	}
+}
@@ -0,0 +1,354 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.upload;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.HttpMethod;
+
+import com.fortify.client.ssc.api.SSCArtifactAPI;
+import com.fortify.client.ssc.connection.SSCAuthenticatingRestConnection;
+import com.fortify.integration.jenkins.ssc.FortifySSCGlobalConfiguration;
+import com.fortify.util.rest.json.JSONList;
+import com.fortify.util.rest.json.JSONMap;
+
+import jenkins.util.Timer;
+
+/**
+ * <p>Controller-wide poller for the processing status of uploaded artifacts. Instead of
+ * every waiting build polling SSC for its own artifact, builds register the artifacts
+ * they are waiting for, and receive a {@link CompletableFuture} that is completed once
+ * the artifact has reached a final {@link FortifySSCArtifactStatus}. Callers can simply
+ * cancel the future if they are no longer interested, for example after a time-out.
+ * Every caller receives its own future, so cancelling a future doesn't affect other 
+ * callers waiting for the same artifact; the artifact is no longer polled once all
+ * callers have cancelled their future.</p>
+ *
+ * <p>The poller checks all pending artifacts for an application version with a single
+ * artifact listing request, so the number of requests depends on the number of application
+ * versions with pending artifacts, not on the number of waiting builds.</p>
+ *
+ * <p>Polling adapts to observed processing times: the poller keeps an exponentially
+ * weighted moving average of the time between registration and processing completion.
+ * Artifacts are polled at decreasing intervals while approaching the expected completion
+ * time, and with exponential back-off once that time has passed.</p>
+ *
+ * <p>At most one poll is running at any time; if a poll is requested while another poll is
+ * running, for example because a new artifact is registered, the next poll is scheduled once
+ * the running poll has finished.</p>
+ *
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCArtifactStatusPoller {
+	private static final Logger LOG = Logger.getLogger(FortifySSCArtifactStatusPoller.class.getName());
+	private static final long MIN_POLL_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(2);
+	private static final long MAX_POLL_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(60);
+	private static final long INITIAL_PROCESSING_TIME_MILLIS = TimeUnit.SECONDS.toMillis(30);
+	private static final double EWMA_WEIGHT = 0.2;
+	private static final int MIN_LISTING_SIZE = 50;
+
+	private final Map<String, Map<String, Waiter>> waitersByApplicationVersionId = new ConcurrentHashMap<>();
+	private double averageProcessingTimeMillis = INITIAL_PROCESSING_TIME_MILLIS;
+	// Guarded by this
+	private ScheduledFuture<?> scheduledPoll;
+	private long scheduledPollAt = Long.MAX_VALUE;
+	private boolean polling;
+	private long pollRequestedAt = Long.MAX_VALUE;
+
+	/**
+	 * Register an artifact to wait for.
+	 * @param log Build log, used to log artifact approval
+	 * @param applicationVersionId Id of the application version that the artifact was uploaded to
+	 * @param artifactId Artifact id
+	 * @param autoApprove Whether to approve the artifact if it requires approval; if any caller 
+	 *        waiting for the same artifact requests approval, the artifact will be approved
+	 * @return {@link CompletableFuture} that will be completed once the artifact has reached a final status;
+	 *         this future is specific to the current caller, and may be cancelled without affecting other callers
+	 */
+	public CompletableFuture<FortifySSCArtifactStatus> register(PrintStream log, String applicationVersionId, String artifactId, boolean autoApprove) {
+		Waiter waiter;
+		CompletableFuture<FortifySSCArtifactStatus> result;
+		// Synchronize with removal of empty waiter maps and abandoned waiters in poll()
+		synchronized (waitersByApplicationVersionId) {
+			Map<String, Waiter> waiters = waitersByApplicationVersionId.get(applicationVersionId);
+			if ( waiters == null ) {
+				waiters = new ConcurrentHashMap<>();
+				waitersByApplicationVersionId.put(applicationVersionId, waiters);
+			}
+			Waiter existing = waiters.get(artifactId);
+			if ( existing != null && !existing.future.isDone() ) { 
+				return existing.addCaller(log, autoApprove);
+			}
+			waiter = new Waiter(System.currentTimeMillis());
+			result = waiter.addCaller(log, autoApprove);
+			waiters.put(artifactId, waiter);
+		}
+		schedule(waiter.nextPollAt);
+		return result;
+	}
+
+	/**
+	 * @return Number of artifacts currently being waited for
+	 */
+	public int getPendingCount() {
+		int result = 0;
+		for ( Map<String, Waiter> waiters : waitersByApplicationVersionId.values() ) {
+			result += waiters.size();
+		}
+		return result;
+	}
+
+	/**
+	 * @return Current average processing time in milliseconds, used for adapting the poll interval
+	 */
+	public synchronized long getAverageProcessingTimeMillis() {
+		return (long)averageProcessingTimeMillis;
+	}
+
+	private synchronized void schedule(long pollAt) {
+		if ( polling ) {
+			// Scheduled once the running poll has finished
+			pollRequestedAt = Math.min(pollRequestedAt, pollAt);
+			return;
+		}
+		if ( pollAt >= scheduledPollAt ) { return; }
+		if ( scheduledPoll != null ) { scheduledPoll.cancel(false); }
+		scheduledPollAt = pollAt;
+		scheduledPoll = Timer.get().schedule(new Runnable() {
+			@Override
+			public void run() {
+				poll();
+			}
+		}, Math.max(0, pollAt-System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+	}
+
+	private void poll() {
+		synchronized (this) {
+			scheduledPoll = null;
+			scheduledPollAt = Long.MAX_VALUE;
+			if ( polling ) {
+				pollRequestedAt = System.currentTimeMillis();
+				return;
+			}
+			polling = true;
+		}
+		long nextPollAt = Long.MAX_VALUE;
+		try {
+			nextPollAt = pollAll();
+		} finally {
+			synchronized (this) {
+				polling = false;
+				nextPollAt = Math.min(nextPollAt, pollRequestedAt);
+				pollRequestedAt = Long.MAX_VALUE;
+			}
+			if ( nextPollAt != Long.MAX_VALUE ) {
+				schedule(nextPollAt);
+			}
+		}
+	}
+	
+	/**
+	 * Poll all application versions that have artifacts due for polling
+	 * @return Time at which the next poll is due, or {@link Long#MAX_VALUE} if there are no more pending artifacts
+	 */
+	private long pollAll() {
+		long nextPollAt = Long.MAX_VALUE;
+		SSCAuthenticatingRestConnection conn = getConnection();
+		for ( Map.Entry<String, Map<String, Waiter>> entry : waitersByApplicationVersionId.entrySet() ) {
+			Map<String, Waiter> waiters = entry.getValue();
+			removeCancelled(waiters);
+			if ( waiters.isEmpty() ) {
+				synchronized (waitersByApplicationVersionId) {
+					if ( waiters.isEmpty() ) { waitersByApplicationVersionId.remove(entry.getKey(), waiters); }
+				}
+			} else if ( conn != null && isDue(waiters) ) {
+				try {
+					pollApplicationVersion(conn, entry.getKey(), waiters);
+				} catch ( RuntimeException e ) {
+					LOG.log(Level.WARNING, "Error polling SSC artifact status for application version "+entry.getKey(), e);
+					postpone(waiters, MAX_POLL_INTERVAL_MILLIS);
+				}
+			} else if ( conn == null ) {
+				postpone(waiters, MAX_POLL_INTERVAL_MILLIS);
+			}
+			for ( Waiter waiter : waiters.values() ) {
+				nextPollAt = Math.min(nextPollAt, waiter.nextPollAt);
+			}
+		}
+		return nextPollAt;
+	}
+	
+	private SSCAuthenticatingRestConnection getConnection() {
+		try {
+			return FortifySSCGlobalConfiguration.get().conn();
+		} catch ( RuntimeException e ) {
+			LOG.log(Level.WARNING, "Error connecting to SSC", e);
+			return null;
+		}
+	}
+	
+	private void postpone(Map<String, Waiter> waiters, long delayMillis) {
+		long nextPollAt = System.currentTimeMillis()+delayMillis;
+		for ( Waiter waiter : waiters.values() ) {
+			waiter.nextPollAt = Math.max(waiter.nextPollAt, nextPollAt);
+		}
+	}
+
+	private void removeCancelled(Map<String, Waiter> waiters) {
+		// Synchronize with adding callers to existing waiters in register()
+		synchronized (waitersByApplicationVersionId) {
+			for ( Map.Entry<String, Waiter> entry : waiters.entrySet() ) {
+				Waiter waiter = entry.getValue();
+				if ( waiter.future.isDone() || waiter.isAbandoned() ) { 
+					waiters.remove(entry.getKey(), waiter);
+					waiter.future.cancel(false);
+				}
+			}
+		}
+	}
+
+	private boolean isDue(Map<String, Waiter> waiters) {
+		long now = System.currentTimeMillis();
+		for ( Waiter waiter : waiters.values() ) {
+			if ( waiter.nextPollAt <= now ) { return true; }
+		}
+		return false;
+	}
+
+	/**
+	 * Check all pending artifacts for the given application version using a single artifact
+	 * listing request. Artifacts that are not included in the listing (for example because
+	 * many other artifacts have been uploaded since) are checked individually.
+	 */
+	private void pollApplicationVersion(SSCAuthenticatingRestConnection conn, String applicationVersionId, Map<String, Waiter> waiters) {
+		JSONMap response = conn.executeRequest(HttpMethod.GET, conn.getBaseResource()
+				.path("api/v1/projectVersions").path(applicationVersionId).path("artifacts")
+				.queryParam("orderby", "-uploadDate").queryParam("limit", String.valueOf(Math.max(MIN_LISTING_SIZE, 2*waiters.size())))
+				.queryParam("fields", "id,status"), JSONMap.class, false);
+		Map<String, String> statuses = new HashMap<>();
+		JSONList artifacts = response.get("data", JSONList.class);
+		if ( artifacts != null ) {
+			for ( JSONMap artifact : artifacts.asValueType(JSONMap.class) ) {
+				String status = artifact.get("status", String.class);
+				if ( status != null ) { statuses.put(artifact.get("id", String.class), status); }
+			}
+		}
+		SSCArtifactAPI artifactApi = conn.api(SSCArtifactAPI.class);
+		long now = System.currentTimeMillis();
+		for ( Map.Entry<String, Waiter> entry : waiters.entrySet() ) {
+			String artifactId = entry.getKey();
+			Waiter waiter = entry.getValue();
+			FortifySSCArtifactStatus status = statuses.containsKey(artifactId)
+					? FortifySSCArtifactStatus.fromSSCStatus(statuses.get(artifactId))
+					: FortifySSCArtifactStatus.fromSSCStatus(artifactApi.getArtifactById(artifactId, false).get("status", String.class));
+			PrintStream autoApproveLog = waiter.autoApproveLog;
+			if ( status == FortifySSCArtifactStatus.REQUIRE_AUTH && autoApproveLog != null && waiter.approved.compareAndSet(false, true) ) {
+				autoApproveLog.println("[INFO] Approving artifact "+artifactId);
+				try {
+					artifactApi.approveArtifact(artifactId, "Auto-approved by Jenkins");
+				} catch ( RuntimeException e ) {
+					waiter.approved.set(false); // Retry on next poll
+					throw e;
+				}
+				status = FortifySSCArtifactStatus.PROCESSING;
+			}
+			if ( status.isFinal() ) {
+				if ( status == FortifySSCArtifactStatus.PROCESS_COMPLETE ) { recordProcessingTime(now-waiter.registeredAt); }
+				waiters.remove(artifactId, waiter);
+				waiter.future.complete(status);
+			} else {
+				waiter.nextPollAt = now+getPollInterval(now-waiter.registeredAt, now-waiter.lastPolledAt);
+				waiter.lastPolledAt = now;
+			}
+		}
+	}
+
+	/**
+	 * Get the interval until the next poll for an artifact that has been waiting for the given
+	 * amount of time. Before the expected completion time, we poll halfway to the expected
+	 * completion time; afterwards we double the previous interval.
+	 */
+	private synchronized long getPollInterval(long waitingMillis, long previousIntervalMillis) {
+		long expectedRemainingMillis = (long)averageProcessingTimeMillis-waitingMillis;
+		long interval = expectedRemainingMillis > 0 ? expectedRemainingMillis/2 : 2*previousIntervalMillis;
+		return Math.max(MIN_POLL_INTERVAL_MILLIS, Math.min(MAX_POLL_INTERVAL_MILLIS, interval));
+	}
+
+	private synchronized void recordProcessingTime(long processingTimeMillis) {
+		averageProcessingTimeMillis = EWMA_WEIGHT*processingTimeMillis + (1-EWMA_WEIGHT)*averageProcessingTimeMillis;
+	}
+
+	/**
+	 * Waiter for a single artifact, shared by all callers waiting for that artifact. The
+	 * future held by this waiter is never handed out to callers; every caller receives
+	 * its own dependent future instead.
+	 */
+	private final class Waiter {
+		private final CompletableFuture<FortifySSCArtifactStatus> future = new CompletableFuture<>();
+		private final List<CompletableFuture<FortifySSCArtifactStatus>> callerFutures = new CopyOnWriteArrayList<>();
+		/** Log of the first caller that requested auto-approval, or null if no caller requested auto-approval */
+		private volatile PrintStream autoApproveLog;
+		private final long registeredAt;
+		private volatile long lastPolledAt;
+		private volatile long nextPollAt;
+		private final AtomicBoolean approved = new AtomicBoolean(false);
+
+		public Waiter(long registeredAt) {
+			this.registeredAt = registeredAt;
+			this.lastPolledAt = registeredAt;
+			this.nextPollAt = registeredAt+getPollInterval(0, MIN_POLL_INTERVAL_MILLIS);
+		}
+		
+		public CompletableFuture<FortifySSCArtifactStatus> addCaller(PrintStream log, boolean autoApprove) {
+			if ( autoApprove && autoApproveLog == null ) { autoApproveLog = log; }
+			CompletableFuture<FortifySSCArtifactStatus> result = future.thenApply(Function.<FortifySSCArtifactStatus>identity());
+			callerFutures.add(result);
+			return result;
+		}
+		
+		/**
+		 * @return true if all callers have cancelled their future, false otherwise
+		 */
+		public boolean isAbandoned() {
+			for ( CompletableFuture<FortifySSCArtifactStatus> callerFuture : callerFutures ) {
+				if ( !callerFuture.isDone() ) { return false; }
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,293 @@
+/*******************************************************************************
+ * (c) Copyright 2017 EntIT Software LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the 
+ * "Software"), to deal in the Software without restriction, including without 
+ * limitation the rights to use, copy, modify, merge, publish, distribute, 
+ * sublicense, and/or sell copies of the Software, and to permit persons to 
+ * whom the Software is furnished to do so, subject to the following 
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included 
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY 
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE 
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ ******************************************************************************/
+package com.fortify.integration.jenkins.ssc.upload;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.MediaType;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+import com.fortify.client.ssc.connection.SSCAuthenticatingRestConnection;
+import com.fortify.integration.jenkins.configurable.AbortWithMessageException;
+import com.fortify.integration.jenkins.ssc.connection.FortifySSCHttpStatusException;
+import com.fortify.util.rest.json.JSONList;
+import com.fortify.util.rest.json.JSONMap;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * <p>This class uploads FPR files to SSC using one of the {@link UploadMode}s:</p>
+ * <ul>
+ *  <li>{@link UploadMode#AGENT}: The agent that holds the FPR file uploads the file directly
+ *      to SSC. Only the upload URL, including a short-lived upload token, is sent to the agent;
+ *      the REST connection and its credentials never leave the controller.</li>
+ *  <li>{@link UploadMode#CONTROLLER}: The controller streams the FPR file from the agent to
+ *      SSC, for agents that cannot reach SSC. The file is never buffered in memory or stored
+ *      in a temporary file on the controller.</li>
+ * </ul>
+ *
+ * <p>In both modes, the file is sent to SSC using chunked transfer encoding.</p>
+ *
+ * <p>The id of the uploaded artifact is taken from the upload response. Older SSC versions
+ * don't include the artifact id in the upload response; in that case the artifact is looked 
+ * up by file name and size among the artifacts that didn't exist before the upload, failing
+ * if this doesn't result in a single artifact, for example due to concurrent uploads of 
+ * identical files.</p>
+ *
+ * @author Ruud Senden
+ *
+ */
+public final class FortifySSCFPRUploader {
+	private static final int CHUNK_SIZE = 64*1024;
+	private static final int TIMEOUT_MILLIS = (int)TimeUnit.MINUTES.toMillis(10);
+	private static final String SUCCESS_CODE = "-10001";
+	private static final int MAX_ARTIFACTS = 50;
+	private final SSCAuthenticatingRestConnection conn;
+
+	public static enum UploadMode {
+		AGENT("Agent"), CONTROLLER("Controller");
+
+		private final String displayName;
+
+		private UploadMode(String displayName) {
+			this.displayName = displayName;
+		}
+
+		public String getDisplayName() {
+			return displayName;
+		}
+
+		/**
+		 * @param displayName Display name of the upload mode
+		 * @return Matching {@link UploadMode}, or {@link #AGENT} if the given display name is blank, 
+		 *         for example for operations configured before the upload mode option was introduced
+		 */
+		public static UploadMode fromDisplayName(String displayName) {
+			if ( StringUtils.isBlank(displayName) ) { return AGENT; }
+			for ( UploadMode mode : values() ) {
+				if ( mode.displayName.equalsIgnoreCase(displayName) ) { return mode; }
+			}
+			throw new AbortWithMessageException("Invalid upload mode '"+displayName+"'");
+		}
+	}
+
+	public FortifySSCFPRUploader(SSCAuthenticatingRestConnection conn) {
+		this.conn = conn;
+	}
+
+	/**
+	 * Upload the given FPR file to the given application version, using the given {@link UploadMode}.
+	 * The transfer rate will be logged to the given log.
+	 * @param log Build log
+	 * @param fprFilePath FPR file to be uploaded
+	 * @param applicationVersionId Id of the application version to upload the FPR file to
+	 * @param mode {@link UploadMode} to use
+	 * @return Id of the uploaded artifact
+	 * @throws IOException if the upload fails
+	 * @throws InterruptedException if the build was interrupted
+	 */
+	public String upload(PrintStream log, FilePath fprFilePath, String applicationVersionId, UploadMode mode) throws IOException, InterruptedException {
+		String fileName = fprFilePath.getName();
+		// Only used if SSC doesn't return the artifact id in the upload response
+		Set<String> existingArtifactIds = getArtifacts(applicationVersionId, fileName).keySet();
+		// Upload tokens are short-lived, so we don't explicitly delete them after uploading
+		String uploadUrl = getUploadUrl(createUploadToken(), applicationVersionId);
+		long start = System.nanoTime();
+		UploadResponse response;
+		switch (mode) {
+		case AGENT:
+			log.println("[INFO] Uploading "+fileName+" directly from agent to SSC");
+			response = fprFilePath.act(new AgentUploadCallable(uploadUrl));
+			break;
+		default:
+			log.println("[INFO] Uploading "+fileName+" to SSC through controller");
+			try ( InputStream in = fprFilePath.read() ) {
+				response = upload(uploadUrl, fileName, in);
+			}
+		}
+		logTransferRate(log, fileName, response.bytes, System.nanoTime()-start);
+		String artifactId = StringUtils.trimToNull(StringUtils.substringBetween(response.body, "<id>", "</id>"));
+		return artifactId != null ? artifactId : getUploadedArtifactId(applicationVersionId, fileName, response.bytes, existingArtifactIds);
+	}
+
+	/**
+	 * Get the id of the artifact with the given file name and size that was uploaded to the 
+	 * given application version, and that didn't exist before the upload. 
+	 * @return Artifact id
+	 * @throws AbortWithMessageException if there isn't exactly one matching artifact
+	 */
+	private String getUploadedArtifactId(String applicationVersionId, String fileName, long bytes, Set<String> existingArtifactIds) {
+		List<String> candidates = new ArrayList<>();
+		for ( Map.Entry<String, JSONMap> entry : getArtifacts(applicationVersionId, fileName).entrySet() ) {
+			Long fileSize = entry.getValue().get("fileSize", Long.class);
+			if ( !existingArtifactIds.contains(entry.getKey()) && (fileSize == null || fileSize == bytes) ) {
+				candidates.add(entry.getKey());
+			}
+		}
+		if ( candidates.isEmpty() ) {
+			throw new AbortWithMessageException("Cannot find uploaded artifact "+fileName+" on SSC");
+		} else if ( candidates.size() > 1 ) {
+			throw new AbortWithMessageException("Cannot identify uploaded artifact "+fileName+" on SSC; found multiple new artifacts with the same name and size: "+StringUtils.join(candidates, ", "));
+		}
+		return candidates.get(0);
+	}
+
+	/**
+	 * @return Most recently uploaded artifacts with the given file name for the given application version, indexed by artifact id
+	 */
+	private Map<String, JSONMap> getArtifacts(String applicationVersionId, String fileName) {
+		JSONMap response = conn.executeRequest(HttpMethod.GET, conn.getBaseResource()
+				.path("api/v1/projectVersions").path(applicationVersionId).path("artifacts")
+				.queryParam("orderby", "-uploadDate").queryParam("limit", String.valueOf(MAX_ARTIFACTS))
+				.queryParam("fields", "id,originalFileName,fileSize"), JSONMap.class, false);
+		JSONList artifacts = response.get("data", JSONList.class);
+		Map<String, JSONMap> result = new LinkedHashMap<>();
+		if ( artifacts != null ) {
+			for ( JSONMap artifact : artifacts.asValueType(JSONMap.class) ) {
+				if ( fileName.equals(artifact.get("originalFileName", String.class)) ) {
+					result.put(artifact.get("id", String.class), artifact);
+				}
+			}
+		}
+		return result;
+	}
+
+	private String createUploadToken() {
+		JSONMap response = conn.executeRequest(HttpMethod.POST, conn.getBaseResource().path("api/v1/fileTokens"),
+				Entity.entity("{\"fileTokenType\":\"UPLOAD\"}", MediaType.APPLICATION_JSON_TYPE), JSONMap.class);
+		return response.get("data", JSONMap.class).get("token", String.class);
+	}
+
+	private String getUploadUrl(String uploadToken, String applicationVersionId) throws IOException {
+		return StringUtils.removeEnd(conn.getBaseUrl(), "/")+"/upload/resultFileUpload.html?mat="
+				+URLEncoder.encode(uploadToken, "UTF-8")+"&entityId="+URLEncoder.encode(applicationVersionId, "UTF-8");
+	}
+
+	private static void logTransferRate(PrintStream log, String fileName, long bytes, long nanos) {
+		double seconds = Math.max(nanos, 1)/1e9;
+		log.println(String.format("[INFO] Uploaded %s (%,d bytes) in %.1f seconds (%,.0f bytes/second)", fileName, bytes, seconds, bytes/seconds));
+	}
+
+	/**
+	 * Upload the contents of the given {@link InputStream} to the given upload URL,
+	 * using a multipart request with chunked transfer encoding.
+	 * @return Number of bytes uploaded, and response body
+	 */
+	private static UploadResponse upload(String uploadUrl, String fileName, InputStream in) throws IOException {
+		String boundary = "----FortifyJenkinsPlugin"+UUID.randomUUID().toString().replace("-", "");
+		HttpURLConnection connection = (HttpURLConnection)new URL(uploadUrl).openConnection();
+		try {
+			connection.setRequestMethod(HttpMethod.POST);
+			connection.setDoOutput(true);
+			connection.setChunkedStreamingMode(CHUNK_SIZE);
+			connection.setConnectTimeout(TIMEOUT_MILLIS);
+			connection.setReadTimeout(TIMEOUT_MILLIS);
+			connection.setRequestProperty("Content-Type", "multipart/form-data; boundary="+boundary);
+			long bytes = 0;
+			try ( OutputStream out = connection.getOutputStream() ) {
+				out.write(("--"+boundary+"\r\nContent-Disposition: form-data; name=\"file\"; filename=\""+fileName.replace("\"", "")
+						+"\"\r\nContent-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+				byte[] buffer = new byte[CHUNK_SIZE];
+				for ( int read = in.read(buffer) ; read != -1 ; read = in.read(buffer) ) {
+					out.write(buffer, 0, read);
+					bytes += read;
+				}
+				out.write(("\r\n--"+boundary+"--\r\n").getBytes(StandardCharsets.UTF_8));
+			}
+			int responseCode = connection.getResponseCode();
+			String response = getResponse(connection, responseCode);
+			if ( responseCode != HttpURLConnection.HTTP_OK || !response.contains(SUCCESS_CODE) ) {
+				// Allows for checking the status code, for example to invalidate stale cached data
+				throw new FortifySSCHttpStatusException("Error uploading "+fileName+" to SSC (HTTP "+responseCode+"): "+StringUtils.abbreviate(response, 500), responseCode);
+			}
+			return new UploadResponse(bytes, response);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private static String getResponse(HttpURLConnection connection, int responseCode) throws IOException {
+		try ( InputStream responseStream = responseCode < 400 ? connection.getInputStream() : connection.getErrorStream() ) {
+			return responseStream == null ? "" : IOUtils.toString(responseStream, "UTF-8");
+		}
+	}
+
+	/**
+	 * {@link MasterToSlaveFileCallable} for uploading a file directly from the agent to SSC.
+	 * This callable only carries the upload URL, which contains a short-lived upload token.
+	 */
+	private static final class AgentUploadCallable extends MasterToSlaveFileCallable<UploadResponse> {
+		private static final long serialVersionUID = 1L;
+		private final String uploadUrl;
+
+		public AgentUploadCallable(String uploadUrl) {
+			this.uploadUrl = uploadUrl;
+		}
+
+		@Override
+		public UploadResponse invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+			try ( InputStream in = new FileInputStream(f) ) {
+				return upload(uploadUrl, f.getName(), in);
+			}
+		}
+	}
+
+	/**
+	 * Number of bytes uploaded, and response body returned by SSC
+	 */
+	private static final class UploadResponse implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final long bytes;
+		private final String body;
+
+		public UploadResponse(long bytes, String body) {
+			this.bytes = bytes;
+			this.body = body;
+		}
+	}
+}